@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+import com.pacoworks.rxmemoization.MemoizationBuilder;
+import com.pacoworks.rxmemoization.RxMemoization;
+
+import rx.functions.Func2;
+
+/**
+ * Hits on a small set of hot keys shared by 1 to 64 threads, measuring how well the hit path
+ * scales when every core reads the same entries.
+ *
+ * @author pakoito
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentionBenchmark {
+    private static final int HOT_KEYS = 16;
+
+    @Param({
+            "unbounded", "bounded", "threadLocal"
+    })
+    public String storage;
+
+    private final Integer[] keys = new Integer[HOT_KEYS];
+
+    private Func2<Integer, Integer, Integer> func2;
+
+    @Setup
+    public void setUp() {
+        final MemoizationBuilder builder = RxMemoization.builder();
+        if ("bounded".equals(storage)) {
+            builder.maximumSize(1024);
+        } else if ("threadLocal".equals(storage)) {
+            builder.threadLocalCache(HOT_KEYS * 2);
+        }
+        func2 = builder.memoize(Functions.FUNC2);
+        for (int i = 0; i < HOT_KEYS; i++) {
+            keys[i] = i * 1000;
+            func2.call(keys[i], keys[i]);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Integer threads1(Cursor cursor) {
+        return hit(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer threads4(Cursor cursor) {
+        return hit(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Integer threads16(Cursor cursor) {
+        return hit(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Integer threads64(Cursor cursor) {
+        return hit(cursor);
+    }
+
+    private Integer hit(Cursor cursor) {
+        final Integer key = keys[cursor.index++ & (HOT_KEYS - 1)];
+        return func2.call(key, key);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization.jmh;
+
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.functions.Func9;
+import rx.functions.FuncN;
+
+/**
+ * Cheap functions to memoize, so the benchmarks measure the memoization overhead.
+ *
+ * @author pakoito
+ */
+final class Functions {
+    static final Func0<Integer> FUNC0 = new Func0<Integer>() {
+        @Override
+        public Integer call() {
+            return 0;
+        }
+    };
+
+    static final Func1<Integer, Integer> FUNC1 = new Func1<Integer, Integer>() {
+        @Override
+        public Integer call(Integer a) {
+            return a;
+        }
+    };
+
+    static final Func2<Integer, Integer, Integer> FUNC2 = new Func2<Integer, Integer, Integer>() {
+        @Override
+        public Integer call(Integer a, Integer b) {
+            return a + b;
+        }
+    };
+
+    static final Func9<Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer,
+            Integer, Integer> FUNC9 = new Func9<Integer, Integer, Integer, Integer, Integer,
+            Integer, Integer, Integer, Integer, Integer>() {
+        @Override
+        public Integer call(Integer a, Integer b, Integer c, Integer d, Integer e, Integer f,
+                Integer g, Integer h, Integer i) {
+            return a + i;
+        }
+    };
+
+    static final FuncN<Integer> FUNCN = new FuncN<Integer>() {
+        @Override
+        public Integer call(Object... args) {
+            return args.length;
+        }
+    };
+
+    private Functions() {
+        // No instances
+    }
+}
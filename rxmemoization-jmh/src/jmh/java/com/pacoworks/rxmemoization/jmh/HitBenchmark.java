@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import com.pacoworks.rxmemoization.MemoizationBuilder;
+import com.pacoworks.rxmemoization.RxMemoization;
+
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.functions.Func9;
+import rx.functions.FuncN;
+
+/**
+ * Cache hit path for each arity, on the default storage and on a bounded one.
+ *
+ * @author pakoito
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HitBenchmark {
+    @Param({
+            "unbounded", "bounded"
+    })
+    public String storage;
+
+    private final Integer one = 1;
+
+    private final Integer two = 2;
+
+    private final Object[] args = new Object[] {
+            one, two, one
+    };
+
+    private Func0<Integer> func0;
+
+    private Func1<Integer, Integer> func1;
+
+    private Func2<Integer, Integer, Integer> func2;
+
+    private Func9<Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer,
+            Integer> func9;
+
+    private FuncN<Integer> funcN;
+
+    @Setup
+    public void setUp() {
+        final MemoizationBuilder builder = "bounded".equals(storage) ? RxMemoization.builder()
+                .maximumSize(1024) : RxMemoization.builder();
+        func0 = builder.memoize(Functions.FUNC0);
+        func1 = builder.memoize(Functions.FUNC1);
+        func2 = builder.memoize(Functions.FUNC2);
+        func9 = builder.memoize(Functions.FUNC9);
+        funcN = builder.memoize(Functions.FUNCN);
+    }
+
+    @Benchmark
+    public Integer hit0() {
+        return func0.call();
+    }
+
+    @Benchmark
+    public Integer hit1() {
+        return func1.call(one);
+    }
+
+    @Benchmark
+    public Integer hit2() {
+        return func2.call(one, two);
+    }
+
+    @Benchmark
+    public Integer hit9() {
+        return func9.call(one, two, one, two, one, two, one, two, one);
+    }
+
+    @Benchmark
+    public Integer hitN() {
+        return funcN.call(args);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import com.pacoworks.rxmemoization.EvictionPolicy;
+import com.pacoworks.rxmemoization.RxMemoization;
+
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.functions.Func9;
+import rx.functions.FuncN;
+
+/**
+ * Cache miss path for each arity: every call has new parameters, so it registers the load, calls
+ * the function, stores the result and evicts an older one. Storage is bounded so the benchmark
+ * runs in constant memory.
+ *
+ * @author pakoito
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MissBenchmark {
+    @Param({
+            "LRU", "SEGMENTED_LRU"
+    })
+    public EvictionPolicy evictionPolicy;
+
+    private Func1<Integer, Integer> func1;
+
+    private Func2<Integer, Integer, Integer> func2;
+
+    private Func9<Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer,
+            Integer> func9;
+
+    private FuncN<Integer> funcN;
+
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        func1 = RxMemoization.builder().maximumSize(1024).evictionPolicy(evictionPolicy)
+                .memoize(Functions.FUNC1);
+        func2 = RxMemoization.builder().maximumSize(1024).evictionPolicy(evictionPolicy)
+                .memoize(Functions.FUNC2);
+        func9 = RxMemoization.builder().maximumSize(1024).evictionPolicy(evictionPolicy)
+                .memoize(Functions.FUNC9);
+        funcN = RxMemoization.builder().maximumSize(1024).evictionPolicy(evictionPolicy)
+                .memoize(Functions.FUNCN);
+    }
+
+    @Benchmark
+    public Integer miss1() {
+        return func1.call(counter++);
+    }
+
+    @Benchmark
+    public Integer miss2() {
+        return func2.call(counter++, 0);
+    }
+
+    @Benchmark
+    public Integer miss9() {
+        return func9.call(counter++, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    @Benchmark
+    public Integer missN() {
+        return funcN.call(counter++, 0, 0);
+    }
+}
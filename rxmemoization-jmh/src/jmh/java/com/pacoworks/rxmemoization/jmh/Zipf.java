@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization.jmh;
+
+import java.util.Random;
+
+/**
+ * Precomputed sequence of keys following a Zipf distribution, so sampling doesn't show up in the
+ * benchmarks.
+ *
+ * @author pakoito
+ */
+final class Zipf {
+    static final int SIZE = 1 << 16;
+
+    static final int MASK = SIZE - 1;
+
+    private Zipf() {
+        // No instances
+    }
+
+    /**
+     * Returns {@link #SIZE} keys in [0, items) where key k is drawn with probability proportional
+     * to 1 / (k + 1)^skew
+     *
+     * @param items number of distinct keys
+     * @param skew exponent of the distribution, higher is more skewed
+     * @param seed seed of the random generator
+     * @return sampled keys
+     */
+    static int[] keys(int items, double skew, long seed) {
+        final double[] cumulative = new double[items];
+        double sum = 0;
+        for (int i = 0; i < items; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        final Random random = new Random(seed);
+        final int[] keys = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            final double target = random.nextDouble() * sum;
+            int low = 0;
+            int high = items - 1;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (cumulative[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            keys[i] = low;
+        }
+        return keys;
+    }
+}
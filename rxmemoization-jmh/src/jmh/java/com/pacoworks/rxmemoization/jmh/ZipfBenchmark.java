@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization.jmh;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pacoworks.rxmemoization.AdmissionPolicy;
+import com.pacoworks.rxmemoization.EvictionPolicy;
+import com.pacoworks.rxmemoization.MemoizationBuilder;
+import com.pacoworks.rxmemoization.RxMemoization;
+
+import rx.functions.Func1;
+import rx.functions.Func2;
+
+/**
+ * Mixed hits and misses with parameters following a Zipf distribution over more keys than the
+ * storage can hold, for each eviction and admission policy. Besides the time per call it reports
+ * the calls and loads of each iteration, so the hit ratio is 1 - loads / calls.
+ *
+ * @author pakoito
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ZipfBenchmark {
+    @Param({
+            "unbounded", "LRU", "SEGMENTED_LRU", "TINY_LFU"
+    })
+    public String policy;
+
+    @Param({
+            "1000"
+    })
+    public int maximumSize;
+
+    @Param({
+            "0.9"
+    })
+    public double skew;
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private int[] keys;
+
+    private Func1<Integer, Integer> func1;
+
+    private Func2<Integer, Integer, Integer> func2;
+
+    @Setup
+    public void setUp() {
+        keys = Zipf.keys(maximumSize * 100, skew, 42);
+        func1 = builder().memoize(new Func1<Integer, Integer>() {
+            @Override
+            public Integer call(Integer a) {
+                loads.incrementAndGet();
+                return a;
+            }
+        });
+        func2 = builder().memoize(new Func2<Integer, Integer, Integer>() {
+            @Override
+            public Integer call(Integer a, Integer b) {
+                loads.incrementAndGet();
+                return a + b;
+            }
+        });
+    }
+
+    private MemoizationBuilder builder() {
+        if ("unbounded".equals(policy)) {
+            return RxMemoization.builder();
+        }
+        final MemoizationBuilder builder = RxMemoization.builder().maximumSize(maximumSize);
+        if ("TINY_LFU".equals(policy)) {
+            return builder.admissionPolicy(AdmissionPolicy.TINY_LFU);
+        }
+        return builder.evictionPolicy(EvictionPolicy.valueOf(policy));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Integer zipf1(Cursor cursor, Ratio ratio) {
+        ratio.record(loads);
+        return func1.call(keys[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Integer zipf1Contended(Cursor cursor, Ratio ratio) {
+        ratio.record(loads);
+        return func1.call(keys[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Integer zipf2(Cursor cursor, Ratio ratio) {
+        ratio.record(loads);
+        final int key = keys[cursor.next()];
+        return func2.call(key, key & 1);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+
+        @Setup
+        public void setUp() {
+            index = (int)(Thread.currentThread().getId() * 7919) & Zipf.MASK;
+        }
+
+        int next() {
+            return index++ & Zipf.MASK;
+        }
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Ratio {
+        public long calls;
+
+        public long loads;
+
+        private long startLoads = -1;
+
+        void record(AtomicLong totalLoads) {
+            if (startLoads < 0) {
+                startLoads = totalLoads.get();
+            }
+            calls++;
+            loads = totalLoads.get() - startLoads;
+        }
+    }
+}
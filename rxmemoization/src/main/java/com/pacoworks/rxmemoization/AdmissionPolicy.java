@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+/**
+ * Policy deciding whether a new result is stored when a memoized function has reached its maximum
+ * size.
+ *
+ * @author pakoito
+ * @see MemoizationBuilder#admissionPolicy(AdmissionPolicy)
+ */
+public enum AdmissionPolicy {
+    /**
+     * Always stores the new result, evicting another one.
+     */
+    ALWAYS,
+    /**
+     * Stores the new result only if its parameters have been requested more often than the ones of
+     * the result it would evict, as estimated by a compact frequency sketch. Parameters that are
+     * requested only once then don't push out popular results.
+     */
+    TINY_LFU
+}
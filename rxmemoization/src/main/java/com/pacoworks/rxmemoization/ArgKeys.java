@@ -0,0 +1,992 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+/**
+ * Cache keys for functions with a fixed number of parameters, holding each parameter in its own
+ * field and a precomputed hash equal to {@link java.util.Arrays#hashCode(Object[])}.
+ * <p/>
+ * Lookups fill a {@link ReusableKey} probe owned by the calling thread, so a cache hit allocates
+ * nothing. Only a cache miss copies the probe into a new key to store.
+ * <p/>
+ * Storages comparing parameters with an {@link Equivalence} wrap the key in an
+ * {@link EquivalenceKey} that hashes with it, so their lookups fill the probe with
+ * {@code setUnhashed} and never call the parameters' {@link Object#hashCode()}.
+ *
+ * @author pakoito
+ */
+final class ArgKeys {
+    private ArgKeys() {
+        // No instances
+    }
+
+    static final class Key2 implements ReusableKey {
+        private static final ThreadLocal<Key2> PROBE = new ThreadLocal<Key2>() {
+            @Override
+            protected Key2 initialValue() {
+                return new Key2();
+            }
+        };
+
+        Object a;
+
+        Object b;
+
+        private int hashCode;
+
+        static Key2 probe(Object a, Object b) {
+            return PROBE.get().set(a, b);
+        }
+
+        static Key2 unhashedProbe(Object a, Object b) {
+            return PROBE.get().setUnhashed(a, b);
+        }
+
+        Key2 set(Object a, Object b) {
+            this.a = a;
+            this.b = b;
+            int hash = 1;
+            hash = 31 * hash + hash(a);
+            hash = 31 * hash + hash(b);
+            this.hashCode = hash;
+            return this;
+        }
+
+        Key2 setUnhashed(Object a, Object b) {
+            this.a = a;
+            this.b = b;
+            this.hashCode = 0;
+            return this;
+        }
+
+        @Override
+        public Key2 copy() {
+            final Key2 copy = new Key2();
+            copy.a = a;
+            copy.b = b;
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        @Override
+        public void clear() {
+            a = null;
+            b = null;
+        }
+
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object arg(int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                default:
+                    return b;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Key2 that = (Key2)o;
+            return hashCode == that.hashCode && equal(a, that.a) && equal(b, that.b);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static final class Key3 implements ReusableKey {
+        private static final ThreadLocal<Key3> PROBE = new ThreadLocal<Key3>() {
+            @Override
+            protected Key3 initialValue() {
+                return new Key3();
+            }
+        };
+
+        Object a;
+
+        Object b;
+
+        Object c;
+
+        private int hashCode;
+
+        static Key3 probe(Object a, Object b, Object c) {
+            return PROBE.get().set(a, b, c);
+        }
+
+        static Key3 unhashedProbe(Object a, Object b, Object c) {
+            return PROBE.get().setUnhashed(a, b, c);
+        }
+
+        Key3 set(Object a, Object b, Object c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            int hash = 1;
+            hash = 31 * hash + hash(a);
+            hash = 31 * hash + hash(b);
+            hash = 31 * hash + hash(c);
+            this.hashCode = hash;
+            return this;
+        }
+
+        Key3 setUnhashed(Object a, Object b, Object c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.hashCode = 0;
+            return this;
+        }
+
+        @Override
+        public Key3 copy() {
+            final Key3 copy = new Key3();
+            copy.a = a;
+            copy.b = b;
+            copy.c = c;
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        @Override
+        public void clear() {
+            a = null;
+            b = null;
+            c = null;
+        }
+
+        @Override
+        public int arity() {
+            return 3;
+        }
+
+        @Override
+        public Object arg(int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                case 1:
+                    return b;
+                default:
+                    return c;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Key3 that = (Key3)o;
+            return hashCode == that.hashCode && equal(a, that.a) && equal(b, that.b)
+                    && equal(c, that.c);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static final class Key4 implements ReusableKey {
+        private static final ThreadLocal<Key4> PROBE = new ThreadLocal<Key4>() {
+            @Override
+            protected Key4 initialValue() {
+                return new Key4();
+            }
+        };
+
+        Object a;
+
+        Object b;
+
+        Object c;
+
+        Object d;
+
+        private int hashCode;
+
+        static Key4 probe(Object a, Object b, Object c, Object d) {
+            return PROBE.get().set(a, b, c, d);
+        }
+
+        static Key4 unhashedProbe(Object a, Object b, Object c, Object d) {
+            return PROBE.get().setUnhashed(a, b, c, d);
+        }
+
+        Key4 set(Object a, Object b, Object c, Object d) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            int hash = 1;
+            hash = 31 * hash + hash(a);
+            hash = 31 * hash + hash(b);
+            hash = 31 * hash + hash(c);
+            hash = 31 * hash + hash(d);
+            this.hashCode = hash;
+            return this;
+        }
+
+        Key4 setUnhashed(Object a, Object b, Object c, Object d) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.hashCode = 0;
+            return this;
+        }
+
+        @Override
+        public Key4 copy() {
+            final Key4 copy = new Key4();
+            copy.a = a;
+            copy.b = b;
+            copy.c = c;
+            copy.d = d;
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        @Override
+        public void clear() {
+            a = null;
+            b = null;
+            c = null;
+            d = null;
+        }
+
+        @Override
+        public int arity() {
+            return 4;
+        }
+
+        @Override
+        public Object arg(int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                case 1:
+                    return b;
+                case 2:
+                    return c;
+                default:
+                    return d;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Key4 that = (Key4)o;
+            return hashCode == that.hashCode && equal(a, that.a) && equal(b, that.b)
+                    && equal(c, that.c) && equal(d, that.d);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static final class Key5 implements ReusableKey {
+        private static final ThreadLocal<Key5> PROBE = new ThreadLocal<Key5>() {
+            @Override
+            protected Key5 initialValue() {
+                return new Key5();
+            }
+        };
+
+        Object a;
+
+        Object b;
+
+        Object c;
+
+        Object d;
+
+        Object e;
+
+        private int hashCode;
+
+        static Key5 probe(Object a, Object b, Object c, Object d, Object e) {
+            return PROBE.get().set(a, b, c, d, e);
+        }
+
+        static Key5 unhashedProbe(Object a, Object b, Object c, Object d, Object e) {
+            return PROBE.get().setUnhashed(a, b, c, d, e);
+        }
+
+        Key5 set(Object a, Object b, Object c, Object d, Object e) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            int hash = 1;
+            hash = 31 * hash + hash(a);
+            hash = 31 * hash + hash(b);
+            hash = 31 * hash + hash(c);
+            hash = 31 * hash + hash(d);
+            hash = 31 * hash + hash(e);
+            this.hashCode = hash;
+            return this;
+        }
+
+        Key5 setUnhashed(Object a, Object b, Object c, Object d, Object e) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            this.hashCode = 0;
+            return this;
+        }
+
+        @Override
+        public Key5 copy() {
+            final Key5 copy = new Key5();
+            copy.a = a;
+            copy.b = b;
+            copy.c = c;
+            copy.d = d;
+            copy.e = e;
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        @Override
+        public void clear() {
+            a = null;
+            b = null;
+            c = null;
+            d = null;
+            e = null;
+        }
+
+        @Override
+        public int arity() {
+            return 5;
+        }
+
+        @Override
+        public Object arg(int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                case 1:
+                    return b;
+                case 2:
+                    return c;
+                case 3:
+                    return d;
+                default:
+                    return e;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Key5 that = (Key5)o;
+            return hashCode == that.hashCode && equal(a, that.a) && equal(b, that.b)
+                    && equal(c, that.c) && equal(d, that.d) && equal(e, that.e);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static final class Key6 implements ReusableKey {
+        private static final ThreadLocal<Key6> PROBE = new ThreadLocal<Key6>() {
+            @Override
+            protected Key6 initialValue() {
+                return new Key6();
+            }
+        };
+
+        Object a;
+
+        Object b;
+
+        Object c;
+
+        Object d;
+
+        Object e;
+
+        Object f;
+
+        private int hashCode;
+
+        static Key6 probe(Object a, Object b, Object c, Object d, Object e, Object f) {
+            return PROBE.get().set(a, b, c, d, e, f);
+        }
+
+        static Key6 unhashedProbe(Object a, Object b, Object c, Object d, Object e, Object f) {
+            return PROBE.get().setUnhashed(a, b, c, d, e, f);
+        }
+
+        Key6 set(Object a, Object b, Object c, Object d, Object e, Object f) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            this.f = f;
+            int hash = 1;
+            hash = 31 * hash + hash(a);
+            hash = 31 * hash + hash(b);
+            hash = 31 * hash + hash(c);
+            hash = 31 * hash + hash(d);
+            hash = 31 * hash + hash(e);
+            hash = 31 * hash + hash(f);
+            this.hashCode = hash;
+            return this;
+        }
+
+        Key6 setUnhashed(Object a, Object b, Object c, Object d, Object e, Object f) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            this.f = f;
+            this.hashCode = 0;
+            return this;
+        }
+
+        @Override
+        public Key6 copy() {
+            final Key6 copy = new Key6();
+            copy.a = a;
+            copy.b = b;
+            copy.c = c;
+            copy.d = d;
+            copy.e = e;
+            copy.f = f;
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        @Override
+        public void clear() {
+            a = null;
+            b = null;
+            c = null;
+            d = null;
+            e = null;
+            f = null;
+        }
+
+        @Override
+        public int arity() {
+            return 6;
+        }
+
+        @Override
+        public Object arg(int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                case 1:
+                    return b;
+                case 2:
+                    return c;
+                case 3:
+                    return d;
+                case 4:
+                    return e;
+                default:
+                    return f;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Key6 that = (Key6)o;
+            return hashCode == that.hashCode && equal(a, that.a) && equal(b, that.b)
+                    && equal(c, that.c) && equal(d, that.d) && equal(e, that.e) && equal(f, that.f);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static final class Key7 implements ReusableKey {
+        private static final ThreadLocal<Key7> PROBE = new ThreadLocal<Key7>() {
+            @Override
+            protected Key7 initialValue() {
+                return new Key7();
+            }
+        };
+
+        Object a;
+
+        Object b;
+
+        Object c;
+
+        Object d;
+
+        Object e;
+
+        Object f;
+
+        Object g;
+
+        private int hashCode;
+
+        static Key7 probe(Object a, Object b, Object c, Object d, Object e, Object f, Object g) {
+            return PROBE.get().set(a, b, c, d, e, f, g);
+        }
+
+        static Key7 unhashedProbe(Object a, Object b, Object c, Object d, Object e, Object f,
+                Object g) { return PROBE.get().setUnhashed(a, b, c, d, e, f, g);
+        }
+
+        Key7 set(Object a, Object b, Object c, Object d, Object e, Object f, Object g) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            this.f = f;
+            this.g = g;
+            int hash = 1;
+            hash = 31 * hash + hash(a);
+            hash = 31 * hash + hash(b);
+            hash = 31 * hash + hash(c);
+            hash = 31 * hash + hash(d);
+            hash = 31 * hash + hash(e);
+            hash = 31 * hash + hash(f);
+            hash = 31 * hash + hash(g);
+            this.hashCode = hash;
+            return this;
+        }
+
+        Key7 setUnhashed(Object a, Object b, Object c, Object d, Object e, Object f, Object g) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            this.f = f;
+            this.g = g;
+            this.hashCode = 0;
+            return this;
+        }
+
+        @Override
+        public Key7 copy() {
+            final Key7 copy = new Key7();
+            copy.a = a;
+            copy.b = b;
+            copy.c = c;
+            copy.d = d;
+            copy.e = e;
+            copy.f = f;
+            copy.g = g;
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        @Override
+        public void clear() {
+            a = null;
+            b = null;
+            c = null;
+            d = null;
+            e = null;
+            f = null;
+            g = null;
+        }
+
+        @Override
+        public int arity() {
+            return 7;
+        }
+
+        @Override
+        public Object arg(int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                case 1:
+                    return b;
+                case 2:
+                    return c;
+                case 3:
+                    return d;
+                case 4:
+                    return e;
+                case 5:
+                    return f;
+                default:
+                    return g;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Key7 that = (Key7)o;
+            return hashCode == that.hashCode && equal(a, that.a) && equal(b, that.b)
+                    && equal(c, that.c) && equal(d, that.d) && equal(e, that.e) && equal(f, that.f)
+                    && equal(g, that.g);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static final class Key8 implements ReusableKey {
+        private static final ThreadLocal<Key8> PROBE = new ThreadLocal<Key8>() {
+            @Override
+            protected Key8 initialValue() {
+                return new Key8();
+            }
+        };
+
+        Object a;
+
+        Object b;
+
+        Object c;
+
+        Object d;
+
+        Object e;
+
+        Object f;
+
+        Object g;
+
+        Object h;
+
+        private int hashCode;
+
+        static Key8 probe(Object a, Object b, Object c, Object d, Object e, Object f, Object g,
+                Object h) {
+            return PROBE.get().set(a, b, c, d, e, f, g, h);
+        }
+
+        static Key8 unhashedProbe(Object a, Object b, Object c, Object d, Object e, Object f,
+                Object g, Object h) {
+            return PROBE.get().setUnhashed(a, b, c, d, e, f, g, h);
+        }
+
+        Key8 set(Object a, Object b, Object c, Object d, Object e, Object f, Object g, Object h) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            this.f = f;
+            this.g = g;
+            this.h = h;
+            int hash = 1;
+            hash = 31 * hash + hash(a);
+            hash = 31 * hash + hash(b);
+            hash = 31 * hash + hash(c);
+            hash = 31 * hash + hash(d);
+            hash = 31 * hash + hash(e);
+            hash = 31 * hash + hash(f);
+            hash = 31 * hash + hash(g);
+            hash = 31 * hash + hash(h);
+            this.hashCode = hash;
+            return this;
+        }
+
+        Key8 setUnhashed(Object a, Object b, Object c, Object d, Object e, Object f, Object g,
+                Object h) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            this.f = f;
+            this.g = g;
+            this.h = h;
+            this.hashCode = 0;
+            return this;
+        }
+
+        @Override
+        public Key8 copy() {
+            final Key8 copy = new Key8();
+            copy.a = a;
+            copy.b = b;
+            copy.c = c;
+            copy.d = d;
+            copy.e = e;
+            copy.f = f;
+            copy.g = g;
+            copy.h = h;
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        @Override
+        public void clear() {
+            a = null;
+            b = null;
+            c = null;
+            d = null;
+            e = null;
+            f = null;
+            g = null;
+            h = null;
+        }
+
+        @Override
+        public int arity() {
+            return 8;
+        }
+
+        @Override
+        public Object arg(int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                case 1:
+                    return b;
+                case 2:
+                    return c;
+                case 3:
+                    return d;
+                case 4:
+                    return e;
+                case 5:
+                    return f;
+                case 6:
+                    return g;
+                default:
+                    return h;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Key8 that = (Key8)o;
+            return hashCode == that.hashCode && equal(a, that.a) && equal(b, that.b)
+                    && equal(c, that.c) && equal(d, that.d) && equal(e, that.e) && equal(f, that.f)
+                    && equal(g, that.g) && equal(h, that.h);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static final class Key9 implements ReusableKey {
+        private static final ThreadLocal<Key9> PROBE = new ThreadLocal<Key9>() {
+            @Override
+            protected Key9 initialValue() {
+                return new Key9();
+            }
+        };
+
+        Object a;
+
+        Object b;
+
+        Object c;
+
+        Object d;
+
+        Object e;
+
+        Object f;
+
+        Object g;
+
+        Object h;
+
+        Object i;
+
+        private int hashCode;
+
+        static Key9 probe(Object a, Object b, Object c, Object d, Object e, Object f, Object g,
+                Object h, Object i) {
+            return PROBE.get().set(a, b, c, d, e, f, g, h, i);
+        }
+
+        static Key9 unhashedProbe(Object a, Object b, Object c, Object d, Object e, Object f,
+                Object g, Object h, Object i) {
+            return PROBE.get().setUnhashed(a, b, c, d, e, f, g, h, i);
+        }
+
+        Key9 set(Object a, Object b, Object c, Object d, Object e, Object f, Object g, Object h,
+                Object i) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            this.f = f;
+            this.g = g;
+            this.h = h;
+            this.i = i;
+            int hash = 1;
+            hash = 31 * hash + hash(a);
+            hash = 31 * hash + hash(b);
+            hash = 31 * hash + hash(c);
+            hash = 31 * hash + hash(d);
+            hash = 31 * hash + hash(e);
+            hash = 31 * hash + hash(f);
+            hash = 31 * hash + hash(g);
+            hash = 31 * hash + hash(h);
+            hash = 31 * hash + hash(i);
+            this.hashCode = hash;
+            return this;
+        }
+
+        Key9 setUnhashed(Object a, Object b, Object c, Object d, Object e, Object f, Object g,
+                Object h, Object i) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+            this.f = f;
+            this.g = g;
+            this.h = h;
+            this.i = i;
+            this.hashCode = 0;
+            return this;
+        }
+
+        @Override
+        public Key9 copy() {
+            final Key9 copy = new Key9();
+            copy.a = a;
+            copy.b = b;
+            copy.c = c;
+            copy.d = d;
+            copy.e = e;
+            copy.f = f;
+            copy.g = g;
+            copy.h = h;
+            copy.i = i;
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        @Override
+        public void clear() {
+            a = null;
+            b = null;
+            c = null;
+            d = null;
+            e = null;
+            f = null;
+            g = null;
+            h = null;
+            i = null;
+        }
+
+        @Override
+        public int arity() {
+            return 9;
+        }
+
+        @Override
+        public Object arg(int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                case 1:
+                    return b;
+                case 2:
+                    return c;
+                case 3:
+                    return d;
+                case 4:
+                    return e;
+                case 5:
+                    return f;
+                case 6:
+                    return g;
+                case 7:
+                    return h;
+                default:
+                    return i;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Key9 that = (Key9)o;
+            return hashCode == that.hashCode && equal(a, that.a) && equal(b, that.b)
+                    && equal(c, that.c) && equal(d, that.d) && equal(e, that.e) && equal(f, that.f)
+                    && equal(g, that.g) && equal(h, that.h) && equal(i, that.i);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static int hash(Object o) {
+        return null == o ? 0 : o.hashCode();
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == b || (null != a && a.equals(b));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.Arrays;
+
+/**
+ * Cache key holding all the parameters of a function call with a variable number of parameters.
+ *
+ * @author pakoito
+ * @see ArgKeys
+ */
+final class ArgStorage implements ReusableKey {
+    private static final ThreadLocal<ArgStorage> PROBE = new ThreadLocal<ArgStorage>() {
+        @Override
+        protected ArgStorage initialValue() {
+            return new ArgStorage();
+        }
+    };
+
+    Object[] storage;
+
+    private int hashCode;
+
+    ArgStorage(Object... storage) {
+        set(storage);
+    }
+
+    static ArgStorage probe(Object[] storage) {
+        return PROBE.get().set(storage);
+    }
+
+    static ArgStorage unhashedProbe(Object[] storage) {
+        return PROBE.get().setUnhashed(storage);
+    }
+
+    ArgStorage set(Object[] storage) {
+        this.storage = storage;
+        this.hashCode = Arrays.hashCode(this.storage);
+        return this;
+    }
+
+    ArgStorage setUnhashed(Object[] storage) {
+        this.storage = storage;
+        this.hashCode = 0;
+        return this;
+    }
+
+    @Override
+    public ArgStorage copy() {
+        final ArgStorage copy = new ArgStorage();
+        copy.storage = storage;
+        copy.hashCode = hashCode;
+        return copy;
+    }
+
+    @Override
+    public void clear() {
+        storage = null;
+    }
+
+    @Override
+    public int arity() {
+        return storage.length;
+    }
+
+    @Override
+    public Object arg(int index) {
+        return storage[index];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        ArgStorage that = (ArgStorage)o;
+        return Arrays.equals(storage, that.storage);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func1;
+
+/**
+ * Loader collecting the keys missed within a time window into a single call to a batch function.
+ * <p/>
+ * The first miss opens a batch and schedules it to be loaded once the window ends. Every miss until
+ * then joins it and waits for its result, and a batch reaching the maximum size is loaded right
+ * away by the thread filling it. As the storage only loads each missing key once, each key appears
+ * in a single batch at a time. Keys missing from the returned map get a null result, and if the
+ * batch function fails every waiting caller receives the error.
+ *
+ * @author pakoito
+ */
+final class BatchLoader<A, R> implements Func1<A, R> {
+    private final Func1<Set<A>, Map<A, R>> batchFunction;
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    private final Scheduler scheduler;
+
+    /* Null without a remote tier */
+    private final RemoteRegion remote;
+
+    /* Guarded by this, null if no batch is open */
+    private Batch<A, R> current;
+
+    BatchLoader(Func1<Set<A>, Map<A, R>> batchFunction, long windowNanos, int maxBatchSize,
+            Scheduler scheduler, RemoteRegion remote) {
+        this.batchFunction = batchFunction;
+        this.windowNanos = windowNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.remote = remote;
+    }
+
+    @Override
+    public R call(A key) {
+        final Batch<A, R> batch;
+        final boolean full;
+        synchronized (this) {
+            if (null == current) {
+                current = new Batch<A, R>();
+                if (maxBatchSize > 1) {
+                    schedule(current);
+                }
+            }
+            batch = current;
+            batch.keys.add(key);
+            full = batch.keys.size() >= maxBatchSize;
+            if (full) {
+                current = null;
+            }
+        }
+        if (full) {
+            if (null != batch.timer) {
+                batch.timer.unsubscribe();
+            }
+            load(batch);
+        }
+        return batch.loading.await().get(key);
+    }
+
+    /* Guarded by this */
+    private void schedule(final Batch<A, R> batch) {
+        final Scheduler.Worker worker = scheduler.createWorker();
+        batch.timer = worker;
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    synchronized (BatchLoader.this) {
+                        if (current != batch) {
+                            return;
+                        }
+                        current = null;
+                    }
+                    load(batch);
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        }, windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void load(Batch<A, R> batch) {
+        try {
+            final Map<A, R> results = null == remote ? batchFunction.call(Collections
+                    .unmodifiableSet(batch.keys)) : remote.loadAll(batch.keys, batchFunction);
+            batch.loading.complete(null == results ? Collections.<A, R> emptyMap() : results);
+        } catch (RuntimeException e) {
+            batch.loading.fail(e);
+        } catch (Error e) {
+            batch.loading.fail(e);
+            throw e;
+        }
+    }
+
+    private static final class Batch<A, R> {
+        /* Guarded by the loader until the batch is closed */
+        final Set<A> keys = new HashSet<A>();
+
+        final MemoCache.Loading<Map<A, R>> loading = new MemoCache.Loading<Map<A, R>>();
+
+        /* Guarded by the loader, null if loaded once full */
+        Scheduler.Worker timer;
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
+import rx.Scheduler;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Action2;
+import rx.functions.Func1;
+import rx.plugins.RxJavaPlugins;
+
+/**
+ * Storage applying the limits configured in a {@link MemoizationBuilder}: keeping at most a maximum
+ * number of results, dropping the rest following an {@link EvictionPolicy}, and expiring results
+ * some time after they were stored or last used.
+ * <p/>
+ * When a {@link FrequencySketch} is used for admission, a new result is only kept if its key is
+ * estimated to be more popular than the key of the result it would evict.
+ * <p/>
+ * The recency order is only touched while holding the eviction lock. Hits are recorded in a
+ * {@link ReadBuffer} and new results in a write queue, and both are replayed in batches by
+ * whichever thread gets the lock, so a hit never blocks.
+ * <p/>
+ * Expired results are treated as misses as soon as they are read, and removed from the storage
+ * during the same batched maintenance. As results are kept in write order and in access order,
+ * only the expired ones at the head of each list are visited.
+ * <p/>
+ * Results older than the refresh time are still returned, while a single reload per result runs on
+ * the refresh {@link Scheduler}. A failed reload keeps the old result and is reported to the
+ * RxJava error handler.
+ * <p/>
+ * With an {@link OffHeapStore} the results evicted because of the maximum size are demoted to it
+ * instead of being dropped, and the loader looks for them there before calling the function. They
+ * are serialized after releasing the eviction lock, so a slow codec never blocks maintenance.
+ *
+ * @author pakoito
+ */
+final class BoundedMemoCache<K, R> extends MemoCache<K, R> {
+    private static final float PROTECTED_RATIO = 0.8f;
+
+    private final ConcurrentHashMap<K, Node<K, R>> data = new ConcurrentHashMap<K, Node<K, R>>();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final ReadBuffer<Node<K, R>> readBuffer = new ReadBuffer<Node<K, R>>();
+
+    private final ConcurrentLinkedQueue<Node<K, R>> writeBuffer =
+            new ConcurrentLinkedQueue<Node<K, R>>();
+
+    /* Guarded by evictionLock */
+    private final NodeList<K, R> probation = new NodeList<K, R>();
+
+    /* Guarded by evictionLock */
+    private final NodeList<K, R> protectedSegment = new NodeList<K, R>();
+
+    /* Guarded by evictionLock */
+    private final WriteOrderList<K, R> writeOrder = new WriteOrderList<K, R>();
+
+    private final Action1<Node<K, R>> onAccess = new Action1<Node<K, R>>() {
+        @Override
+        public void call(Node<K, R> node) {
+            onAccess(node);
+        }
+    };
+
+    private final long maximumSize;
+
+    private final long maximumProtected;
+
+    private final boolean segmented;
+
+    /* Guarded by evictionLock, null if every new result is admitted */
+    private final FrequencySketch sketch;
+
+    private final long expireAfterWriteNanos;
+
+    private final long expireAfterAccessNanos;
+
+    private final long refreshAfterWriteNanos;
+
+    private final Scheduler refreshScheduler;
+
+    private final Ticker ticker;
+
+    /* Null without a second tier */
+    private final OffHeapStore<K, R> offHeap;
+
+    /* Results evicted to the off-heap store, not serialized yet */
+    private final ConcurrentLinkedQueue<Demotion<K, R>> demoted =
+            new ConcurrentLinkedQueue<Demotion<K, R>>();
+
+    /* Guarded by evictionLock */
+    private long size;
+
+    /* Guarded by evictionLock */
+    private long protectedSize;
+
+    BoundedMemoCache(MemoizationBuilder builder, Func1<? super K, ? extends R> loader) {
+        this(builder, loader, null);
+    }
+
+    BoundedMemoCache(MemoizationBuilder builder, Func1<? super K, ? extends R> loader,
+            OffHeapStore<K, R> offHeap) {
+        super(promoting(offHeap, loader), builder);
+        this.offHeap = offHeap;
+        final boolean bounded = builder.isBounded();
+        this.maximumSize = bounded ? builder.getMaximumSize() : Long.MAX_VALUE;
+        this.segmented = bounded
+                && EvictionPolicy.SEGMENTED_LRU == builder.getEvictionPolicy();
+        this.maximumProtected = (long)(maximumSize * PROTECTED_RATIO);
+        this.sketch = bounded && AdmissionPolicy.TINY_LFU == builder.getAdmissionPolicy()
+                ? new FrequencySketch(maximumSize) : null;
+        this.expireAfterWriteNanos = builder.getExpireAfterWriteNanos();
+        this.expireAfterAccessNanos = builder.getExpireAfterAccessNanos();
+        this.refreshAfterWriteNanos = builder.getRefreshAfterWriteNanos();
+        this.refreshScheduler = builder.getRefreshScheduler();
+        this.ticker = builder.getTicker();
+    }
+
+    private static <K, R> Func1<? super K, ? extends R> promoting(OffHeapStore<K, R> offHeap,
+            Func1<? super K, ? extends R> loader) {
+        if (null == offHeap) {
+            return loader;
+        }
+        return offHeap.promoting(loader);
+    }
+
+    @Override
+    R getIfPresent(K key) {
+        final Node<K, R> node = data.get(key);
+        if (null == node) {
+            return null;
+        }
+        if (readsTicker()) {
+            final long now = ticker.read();
+            if (hasExpired(node, now)) {
+                return null;
+            }
+            if (expiresAfterAccess()) {
+                node.accessTime = now;
+            }
+            if (refreshes() && now - node.writeTime >= refreshAfterWriteNanos) {
+                refresh(node);
+            }
+        }
+        if (readBuffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+            demoteEvicted();
+        }
+        return node.value;
+    }
+
+    @Override
+    boolean isStored(K key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    void put(K key, R result) {
+        final Node<K, R> node = new Node<K, R>(key, result, readsTicker() ? ticker.read() : 0);
+        final Node<K, R> old = data.put(key, node);
+        if (null != old) {
+            old.alive = false;
+            writeBuffer.add(old);
+            replaced();
+        }
+        afterWrite(node);
+    }
+
+    @Override
+    boolean putIfAbsent(K key, R result) {
+        final Node<K, R> node = new Node<K, R>(key, result, readsTicker() ? ticker.read() : 0);
+        while (true) {
+            final Node<K, R> old = data.putIfAbsent(key, node);
+            if (null == old) {
+                afterWrite(node);
+                return true;
+            }
+            if (!readsTicker() || !hasExpired(old, node.writeTime)) {
+                return false;
+            }
+            /* Expired results count as absent */
+            if (data.replace(key, old, node)) {
+                old.alive = false;
+                writeBuffer.add(old);
+                replaced();
+                afterWrite(node);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    void remove(K key, R result) {
+        final Node<K, R> node = data.get(key);
+        if (null != node && node.value == result && data.remove(key, node)) {
+            node.alive = false;
+            writeBuffer.add(node);
+            removed(key);
+            evictionLock.lock();
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+            demoteEvicted();
+        }
+    }
+
+    @Override
+    void invalidated(K key) {
+        if (null != offHeap) {
+            offHeap.remove(key);
+        }
+    }
+
+    @Override
+    void invalidated(Func1<? super K, Boolean> matches) {
+        if (null != offHeap) {
+            offHeap.removeIf(matches);
+        }
+    }
+
+    @Override
+    long size() {
+        return null == offHeap ? data.size() : data.size() + offHeap.size();
+    }
+
+    @Override
+    void forEach(Action2<? super K, ? super R> action) {
+        final long now = readsTicker() ? ticker.read() : 0;
+        for (Node<K, R> node : data.values()) {
+            if (!readsTicker() || !hasExpired(node, now)) {
+                action.call(node.key, node.value);
+            }
+        }
+    }
+
+    private void refresh(final Node<K, R> node) {
+        if (!Node.REFRESHING.compareAndSet(node, 0, 1)) {
+            return;
+        }
+        final Scheduler.Worker worker = refreshScheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    replace(node, mask(load(node.key)));
+                } catch (Throwable e) {
+                    Exceptions.throwIfFatal(e);
+                    RxJavaPlugins.getInstance().getErrorHandler().handleError(e);
+                    /* Keep the old result and let a later hit try again */
+                    node.refreshing = 0;
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        });
+    }
+
+    private void replace(Node<K, R> old, R result) {
+        final Node<K, R> node = new Node<K, R>(old.key, result, ticker.read());
+        if (data.replace(old.key, old, node)) {
+            old.alive = false;
+            writeBuffer.add(old);
+            replaced();
+            afterWrite(node);
+        }
+    }
+
+    private void afterWrite(Node<K, R> node) {
+        writeBuffer.add(node);
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+        demoteEvicted();
+    }
+
+    /* Guarded by evictionLock */
+    private void maintenance() {
+        readBuffer.drainTo(onAccess);
+        Node<K, R> node;
+        while (null != (node = writeBuffer.poll())) {
+            if (node.alive && null == node.list) {
+                probation.addLast(node);
+                if (expiresAfterWrite()) {
+                    writeOrder.addLast(node);
+                }
+                size++;
+                if (null != sketch) {
+                    sketch.increment(node.key.hashCode());
+                    admit(node);
+                }
+            } else if (!node.alive && null != node.list) {
+                unlink(node);
+            }
+        }
+        expire();
+        evict();
+    }
+
+    /* Guarded by evictionLock */
+    private void expire() {
+        if (!expiresAfterWrite() && !expiresAfterAccess()) {
+            return;
+        }
+        final long now = ticker.read();
+        if (expiresAfterWrite()) {
+            while (null != writeOrder.first && hasExpired(writeOrder.first, now)) {
+                evict(writeOrder.first);
+            }
+        }
+        if (expiresAfterAccess()) {
+            while (null != probation.first && hasExpired(probation.first, now)) {
+                evict(probation.first);
+            }
+            while (null != protectedSegment.first && hasExpired(protectedSegment.first, now)) {
+                evict(protectedSegment.first);
+            }
+        }
+    }
+
+    private boolean hasExpired(Node<K, R> node, long now) {
+        return (expiresAfterWrite() && now - node.writeTime >= expireAfterWriteNanos)
+                || (expiresAfterAccess() && now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    private boolean readsTicker() {
+        return expiresAfterWrite() || expiresAfterAccess() || refreshes();
+    }
+
+    private boolean refreshes() {
+        return refreshAfterWriteNanos >= 0;
+    }
+
+    private boolean expiresAfterWrite() {
+        return expireAfterWriteNanos >= 0;
+    }
+
+    private boolean expiresAfterAccess() {
+        return expireAfterAccessNanos >= 0;
+    }
+
+    /* Guarded by evictionLock */
+    private void admit(Node<K, R> candidate) {
+        if (size <= maximumSize) {
+            return;
+        }
+        final Node<K, R> victim = probation.first != candidate ? probation.first
+                : protectedSegment.first;
+        if (null == victim) {
+            return;
+        }
+        final int victimFrequency = sketch.frequency(victim.key.hashCode());
+        final int candidateFrequency = sketch.frequency(candidate.key.hashCode());
+        demote(candidateFrequency > victimFrequency ? victim : candidate);
+    }
+
+    /* Guarded by evictionLock */
+    private void onAccess(Node<K, R> node) {
+        if (!node.alive || null == node.list) {
+            return;
+        }
+        if (null != sketch) {
+            sketch.increment(node.key.hashCode());
+        }
+        if (!segmented || node.list == protectedSegment) {
+            node.list.moveToLast(node);
+            return;
+        }
+        probation.remove(node);
+        protectedSegment.addLast(node);
+        protectedSize++;
+        while (protectedSize > maximumProtected) {
+            final Node<K, R> demoted = protectedSegment.first;
+            protectedSegment.remove(demoted);
+            protectedSize--;
+            probation.addLast(demoted);
+        }
+    }
+
+    /* Guarded by evictionLock */
+    private void evict() {
+        while (size > maximumSize) {
+            demote(null != probation.first ? probation.first : protectedSegment.first);
+        }
+    }
+
+    /* Guarded by evictionLock */
+    private void demote(Node<K, R> victim) {
+        if (evict(victim) && null != offHeap) {
+            demoted.add(new Demotion<K, R>(unmask(victim.key), victim.value, offHeap.epoch()));
+        }
+    }
+
+    /* Serializes the demoted results once the eviction lock is released */
+    private void demoteEvicted() {
+        if (null == offHeap) {
+            return;
+        }
+        Demotion<K, R> demotion;
+        while (null != (demotion = demoted.poll())) {
+            offHeap.put(demotion.key, demotion.result, demotion.epoch);
+        }
+    }
+
+    /* Guarded by evictionLock */
+    private boolean evict(Node<K, R> victim) {
+        unlink(victim);
+        victim.alive = false;
+        if (!data.remove(victim.key, victim)) {
+            /* Already replaced by a newer result */
+            return false;
+        }
+        removed(victim.key);
+        if (null != stats) {
+            stats.recordEviction();
+        }
+        return true;
+    }
+
+    /* Guarded by evictionLock */
+    private void unlink(Node<K, R> node) {
+        if (node.list == protectedSegment) {
+            protectedSize--;
+        }
+        node.list.remove(node);
+        if (node.inWriteOrder) {
+            writeOrder.remove(node);
+        }
+        size--;
+    }
+
+    private static final class Demotion<K, R> {
+        final K key;
+
+        final R result;
+
+        final long epoch;
+
+        Demotion(K key, R result, long epoch) {
+            this.key = key;
+            this.result = result;
+            this.epoch = epoch;
+        }
+    }
+
+    private static final class Node<K, R> {
+        @SuppressWarnings("rawtypes")
+        static final AtomicIntegerFieldUpdater<Node> REFRESHING = AtomicIntegerFieldUpdater
+                .newUpdater(Node.class, "refreshing");
+
+        final K key;
+
+        final R value;
+
+        final long writeTime;
+
+        volatile long accessTime;
+
+        volatile boolean alive = true;
+
+        volatile int refreshing;
+
+        /* Guarded by evictionLock */
+        NodeList<K, R> list;
+
+        /* Guarded by evictionLock */
+        Node<K, R> prev;
+
+        /* Guarded by evictionLock */
+        Node<K, R> next;
+
+        /* Guarded by evictionLock */
+        boolean inWriteOrder;
+
+        /* Guarded by evictionLock */
+        Node<K, R> prevInWriteOrder;
+
+        /* Guarded by evictionLock */
+        Node<K, R> nextInWriteOrder;
+
+        Node(K key, R value, long now) {
+            this.key = key;
+            this.value = value;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+
+    /**
+     * Doubly linked list of nodes, ordered from least to most recently used.
+     */
+    private static final class NodeList<K, R> {
+        Node<K, R> first;
+
+        Node<K, R> last;
+
+        void addLast(Node<K, R> node) {
+            node.list = this;
+            node.prev = last;
+            node.next = null;
+            if (null == last) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void remove(Node<K, R> node) {
+            if (null == node.prev) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (null == node.next) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.list = null;
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToLast(Node<K, R> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of nodes, ordered from oldest to newest result.
+     */
+    private static final class WriteOrderList<K, R> {
+        Node<K, R> first;
+
+        Node<K, R> last;
+
+        void addLast(Node<K, R> node) {
+            node.inWriteOrder = true;
+            node.prevInWriteOrder = last;
+            node.nextInWriteOrder = null;
+            if (null == last) {
+                first = node;
+            } else {
+                last.nextInWriteOrder = node;
+            }
+            last = node;
+        }
+
+        void remove(Node<K, R> node) {
+            if (null == node.prevInWriteOrder) {
+                first = node.nextInWriteOrder;
+            } else {
+                node.prevInWriteOrder.nextInWriteOrder = node.nextInWriteOrder;
+            }
+            if (null == node.nextInWriteOrder) {
+                last = node.prevInWriteOrder;
+            } else {
+                node.nextInWriteOrder.prevInWriteOrder = node.prevInWriteOrder;
+            }
+            node.inWriteOrder = false;
+            node.prevInWriteOrder = null;
+            node.nextInWriteOrder = null;
+        }
+    }
+}
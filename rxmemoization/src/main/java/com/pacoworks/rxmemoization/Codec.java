@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+/**
+ * Converts results to bytes and back, so they can be kept off the heap.
+ *
+ * @author pakoito
+ * @see MemoizationBuilder#offHeap(long, Codec)
+ */
+public interface Codec<T> {
+    /**
+     * Serializes a result
+     *
+     * @param value non-null result
+     * @return bytes representing the result
+     */
+    byte[] encode(T value);
+
+    /**
+     * Deserializes a result
+     *
+     * @param bytes bytes returned by {@link #encode(Object)}
+     * @return result equivalent to the encoded one
+     */
+    T decode(byte[] bytes);
+}
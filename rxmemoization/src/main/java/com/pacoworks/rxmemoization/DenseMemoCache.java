@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import rx.functions.Action2;
+import rx.functions.Func1;
+
+/**
+ * Storage for functions with a single int parameter in a known, small range, keeping each result in
+ * the array slot for its parameter.
+ *
+ * @author pakoito
+ */
+final class DenseMemoCache<R> extends MemoCache<Integer, R> {
+    private final AtomicReferenceArray<R> results;
+
+    private final int from;
+
+    DenseMemoCache(Func1<? super Integer, ? extends R> loader, int from, int to) {
+        super(loader);
+        if (to < from) {
+            throw new IllegalArgumentException("Empty range [" + from + ", " + to + ")");
+        }
+        this.results = new AtomicReferenceArray<R>(to - from);
+        this.from = from;
+    }
+
+    @Override
+    R getIfPresent(Integer key) {
+        return getIfPresent(key.intValue());
+    }
+
+    /**
+     * Returns the stored result for the key without boxing it
+     *
+     * @param key key to look up
+     * @return stored result or null if absent
+     */
+    R getIfPresent(int key) {
+        return results.get(indexOf(key));
+    }
+
+    @Override
+    void put(Integer key, R result) {
+        results.set(indexOf(key), result);
+    }
+
+    @Override
+    boolean putIfAbsent(Integer key, R result) {
+        return results.compareAndSet(indexOf(key), null, result);
+    }
+
+    @Override
+    void remove(Integer key, R result) {
+        results.compareAndSet(indexOf(key), result, null);
+    }
+
+    @Override
+    long size() {
+        long size = 0;
+        for (int i = 0; i < results.length(); i++) {
+            if (null != results.get(i)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    void forEach(Action2<? super Integer, ? super R> action) {
+        for (int i = 0; i < results.length(); i++) {
+            final R result = results.get(i);
+            if (null != result) {
+                action.call(from + i, result);
+            }
+        }
+    }
+
+    private int indexOf(int key) {
+        final int index = key - from;
+        if (index < 0 || index >= results.length()) {
+            throw new IllegalArgumentException("Parameter " + key + " out of range [" + from
+                    + ", " + (from + results.length()) + ")");
+        }
+        return index;
+    }
+}
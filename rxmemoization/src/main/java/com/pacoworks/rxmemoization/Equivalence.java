@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import rx.functions.Func1;
+
+/**
+ * Strategy to compare and hash the parameters of a memoized function, deciding which calls share
+ * a result.
+ * <p/>
+ * Null parameters are handled before reaching it, and are only equivalent to each other.
+ *
+ * @author pakoito
+ * @see MemoizationBuilder#keyEquivalence(Equivalence)
+ */
+public abstract class Equivalence<T> {
+    /**
+     * Compares parameters with {@link Object#equals(Object)}, the default
+     */
+    public static final Equivalence<Object> EQUALS = new Equivalence<Object>() {
+        @Override
+        public boolean equivalent(Object a, Object b) {
+            return a.equals(b);
+        }
+
+        @Override
+        public int hash(Object value) {
+            return value.hashCode();
+        }
+    };
+
+    /**
+     * Compares parameters by identity, so large immutable parameters are never walked to hash them
+     */
+    public static final Equivalence<Object> IDENTITY = new Equivalence<Object>() {
+        @Override
+        public boolean equivalent(Object a, Object b) {
+            return a == b;
+        }
+
+        @Override
+        public int hash(Object value) {
+            return System.identityHashCode(value);
+        }
+    };
+
+    /**
+     * Compares the keys a projection extracts from the parameters, such as the id of a large
+     * document, so only the part that matters decides which calls share a result
+     *
+     * @param projection function returning a cheap key for a parameter
+     * @return equivalence comparing the keys with {@link Object#equals(Object)}
+     */
+    public static <T> Equivalence<T> onResultOf(final Func1<? super T, ?> projection) {
+        if (null == projection) {
+            throw new NullPointerException("projection");
+        }
+        return new Equivalence<T>() {
+            @Override
+            public boolean equivalent(T a, T b) {
+                final Object keyA = projection.call(a);
+                final Object keyB = projection.call(b);
+                return keyA == keyB || (null != keyA && keyA.equals(keyB));
+            }
+
+            @Override
+            public int hash(T value) {
+                final Object key = projection.call(value);
+                return null == key ? 0 : key.hashCode();
+            }
+        };
+    }
+
+    /**
+     * Returns whether two parameters share a result
+     *
+     * @param a non-null parameter
+     * @param b non-null parameter
+     * @return true if they are equivalent
+     */
+    public abstract boolean equivalent(T a, T b);
+
+    /**
+     * Returns a hash code for a parameter, equal for equivalent parameters
+     *
+     * @param value non-null parameter
+     * @return hash code
+     */
+    public abstract int hash(T value);
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+/**
+ * Cache key comparing the parameters of another key with an {@link Equivalence} instead of their
+ * own {@link Object#equals(Object)}.
+ * <p/>
+ * It wraps either a {@link ReusableKey} or the single parameter of a function, hashing each
+ * parameter once when the key is set.
+ *
+ * @author pakoito
+ * @see MemoizationBuilder#keyEquivalence(Equivalence)
+ */
+final class EquivalenceKey implements ReusableKey {
+    private static final ThreadLocal<EquivalenceKey> PROBE = new ThreadLocal<EquivalenceKey>() {
+        @Override
+        protected EquivalenceKey initialValue() {
+            return new EquivalenceKey();
+        }
+    };
+
+    private Equivalence<Object> equivalence;
+
+    /* Masked single parameter or ReusableKey */
+    Object key;
+
+    private int hashCode;
+
+    static EquivalenceKey probe(Equivalence<Object> equivalence, Object key) {
+        return PROBE.get().set(equivalence, key);
+    }
+
+    EquivalenceKey set(Equivalence<Object> equivalence, Object key) {
+        this.equivalence = equivalence;
+        this.key = key;
+        int hash = 1;
+        for (int i = 0; i < arity(); i++) {
+            final Object arg = arg(i);
+            hash = 31 * hash + (null == arg ? 0 : equivalence.hash(arg));
+        }
+        this.hashCode = hash;
+        return this;
+    }
+
+    @Override
+    public EquivalenceKey copy() {
+        final EquivalenceKey copy = new EquivalenceKey();
+        copy.equivalence = equivalence;
+        copy.key = key instanceof ReusableKey ? ((ReusableKey)key).copy() : key;
+        copy.hashCode = hashCode;
+        return copy;
+    }
+
+    @Override
+    public void clear() {
+        key = null;
+    }
+
+    @Override
+    public int arity() {
+        return key instanceof ReusableKey ? ((ReusableKey)key).arity() : 1;
+    }
+
+    @Override
+    public Object arg(int index) {
+        return key instanceof ReusableKey ? ((ReusableKey)key).arg(index) : MemoCache
+                .unmask(key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        EquivalenceKey that = (EquivalenceKey)o;
+        if (hashCode != that.hashCode || arity() != that.arity()) {
+            return false;
+        }
+        for (int i = 0; i < arity(); i++) {
+            final Object arg = arg(i);
+            final Object other = that.arg(i);
+            if (arg != other && (null == arg || null == other
+                    || !equivalence.equivalent(arg, other))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
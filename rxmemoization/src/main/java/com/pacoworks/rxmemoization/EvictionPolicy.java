@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+/**
+ * Policy used to choose which results to drop when a memoized function reaches its maximum size.
+ *
+ * @author pakoito
+ * @see MemoizationBuilder#evictionPolicy(EvictionPolicy)
+ */
+public enum EvictionPolicy {
+    /**
+     * Drops the least recently used result.
+     */
+    LRU,
+    /**
+     * Keeps results used more than once in a protected segment, dropping first the least recently
+     * used result among the ones used only once.
+     */
+    SEGMENTED_LRU
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Failures of a memoized function kept per key for a backoff period, so callers get the same
+ * exception back instead of calling a failing function again right away.
+ * <p/>
+ * Each consecutive failure of a key doubles its backoff, up to the maximum. A success forgets the
+ * failure, and so does a failure more than the maximum backoff after the previous one expired.
+ * Forgotten failures are purged whenever the number of failing keys doubles.
+ * <p/>
+ * The exception is not copied: every caller during the backoff gets the same instance, possibly
+ * from several threads at once. Callers must not mutate it, for example by adding suppressed
+ * exceptions, setting its cause or replacing its stack trace.
+ *
+ * @author pakoito
+ */
+final class FailureCache<K> {
+    private static final int MINIMUM_PURGE_SIZE = 64;
+
+    private final ConcurrentHashMap<K, Failure> failures = new ConcurrentHashMap<K, Failure>();
+
+    private final long initialBackoffNanos;
+
+    private final long maximumBackoffNanos;
+
+    private final Ticker ticker;
+
+    private volatile int purgeSize = MINIMUM_PURGE_SIZE;
+
+    FailureCache(long initialBackoffNanos, long maximumBackoffNanos, Ticker ticker) {
+        this.initialBackoffNanos = initialBackoffNanos;
+        this.maximumBackoffNanos = maximumBackoffNanos;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Rethrows the last failure of the key if it is still backing off
+     *
+     * @param key key to check, may be a {@link ReusableKey} probe
+     */
+    void check(K key) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        final Failure failure = failures.get(key);
+        if (null != failure && ticker.read() - failure.time < failure.backoffNanos) {
+            throw failure.error;
+        }
+    }
+
+    /**
+     * Records a failure of the key, starting or extending its backoff
+     *
+     * @param key stored key, never a {@link ReusableKey} probe
+     * @param error exception thrown by the function
+     */
+    void failed(K key, RuntimeException error) {
+        final long now = ticker.read();
+        final Failure previous = failures.get(key);
+        final long backoffNanos;
+        if (null == previous || isForgotten(previous, now)) {
+            backoffNanos = initialBackoffNanos;
+        } else if (previous.backoffNanos > maximumBackoffNanos / 2) {
+            backoffNanos = maximumBackoffNanos;
+        } else {
+            backoffNanos = previous.backoffNanos * 2;
+        }
+        failures.put(key, new Failure(error, now, backoffNanos));
+        if (failures.size() >= purgeSize) {
+            purge(now);
+        }
+    }
+
+    /**
+     * Forgets the failures of the key after a successful call
+     *
+     * @param key stored key
+     */
+    void succeeded(K key) {
+        if (!failures.isEmpty()) {
+            failures.remove(key);
+        }
+    }
+
+    private void purge(long now) {
+        final Iterator<Failure> iterator = failures.values().iterator();
+        while (iterator.hasNext()) {
+            if (isForgotten(iterator.next(), now)) {
+                iterator.remove();
+            }
+        }
+        purgeSize = Math.max(MINIMUM_PURGE_SIZE, failures.size() * 2);
+    }
+
+    private boolean isForgotten(Failure failure, long now) {
+        return now - failure.time - failure.backoffNanos >= maximumBackoffNanos;
+    }
+
+    private static final class Failure {
+        final RuntimeException error;
+
+        final long time;
+
+        final long backoffNanos;
+
+        Failure(RuntimeException error, long time, long backoffNanos) {
+            this.error = error;
+            this.time = time;
+            this.backoffNanos = backoffNanos;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+/**
+ * Count-min sketch estimating how often each key has been requested, used to decide whether a
+ * new result is worth keeping over the one it would evict.
+ * <p/>
+ * Each long in the table holds sixteen 4-bit counters, so a key costs four counters spread over
+ * four rows and no reference to the key itself. Once the number of increments reaches ten times
+ * the table size all counters are halved, so old popularity fades away.
+ * <p/>
+ * Not thread safe, it is only accessed while holding the eviction lock.
+ *
+ * @author pakoito
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private int size;
+
+    FrequencySketch(long maximumSize) {
+        final int capacity = (int)Math.max(1, Math.min(maximumSize, MAXIMUM_CAPACITY));
+        table = new long[1 << (32 - Integer.numberOfLeadingZeros(capacity - 1))];
+        tableMask = table.length - 1;
+        sampleSize = sampleSize(capacity);
+    }
+
+    /**
+     * Returns the number of additions between two agings, ten times the capacity
+     *
+     * @param capacity number of keys tracked
+     * @return sample size, at most {@link Integer#MAX_VALUE}
+     */
+    static int sampleSize(int capacity) {
+        return (int)Math.min(10L * capacity, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the estimated number of times the key has been requested, up to 15
+     *
+     * @param hashCode hash of the key
+     * @return estimated frequency
+     */
+    int frequency(int hashCode) {
+        final int hash = spread(hashCode);
+        final int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            final int index = indexOf(hash, i);
+            final int count = (int)((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records a request for the key, aging all the counters periodically
+     *
+     * @param hashCode hash of the key
+     */
+    void increment(int hashCode) {
+        final int hash = spread(hashCode);
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int)h & tableMask;
+    }
+
+    private static int spread(int hashCode) {
+        int h = hashCode;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import rx.functions.Action2;
+import rx.functions.Func1;
+
+/**
+ * Storage for functions whose parameters fit in a long, kept in an open addressing table with
+ * primitive keys instead of boxed keys and map nodes.
+ * <p/>
+ * Readers don't lock: the key of a slot is written before its result is published with a
+ * volatile write, so a reader that sees a result also sees its key. Writers are serialised, and a
+ * full table is copied into a new one twice its size that replaces it atomically.
+ *
+ * @author pakoito
+ */
+final class LongMemoCache<R> extends MemoCache<Long, R> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /* Marks a removed result so the lookups keep probing past its slot */
+    private static final Object REMOVED = new Object();
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    /* Null if the key is the only parameter */
+    private final Func1<Long, Object[]> unpacker;
+
+    LongMemoCache(Func1<? super Long, ? extends R> loader) {
+        this(loader, null);
+    }
+
+    LongMemoCache(Func1<? super Long, ? extends R> loader, Func1<Long, Object[]> unpacker) {
+        super(loader);
+        this.unpacker = unpacker;
+    }
+
+    @Override
+    R getIfPresent(Long key) {
+        return getIfPresent(key.longValue());
+    }
+
+    /**
+     * Returns the stored result for the key without boxing it
+     *
+     * @param key key to look up
+     * @return stored result or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    R getIfPresent(long key) {
+        final Table current = table;
+        int index = current.indexOf(key);
+        while (true) {
+            final Object value = current.values.get(index);
+            if (null == value) {
+                return null;
+            }
+            if (current.keys[index] == key) {
+                return REMOVED == value ? null : (R)value;
+            }
+            index = (index + 1) & current.mask;
+        }
+    }
+
+    @Override
+    synchronized void put(Long key, R result) {
+        final long primitive = key.longValue();
+        Table current = table;
+        if (current.used + 1 > current.threshold) {
+            current = resize(current);
+        }
+        int index = current.indexOf(primitive);
+        while (true) {
+            final Object value = current.values.get(index);
+            if (null == value) {
+                current.keys[index] = primitive;
+                current.values.set(index, result);
+                current.used++;
+                return;
+            }
+            if (current.keys[index] == primitive) {
+                current.values.set(index, result);
+                return;
+            }
+            index = (index + 1) & current.mask;
+        }
+    }
+
+    @Override
+    synchronized boolean putIfAbsent(Long key, R result) {
+        if (null != getIfPresent(key.longValue())) {
+            return false;
+        }
+        put(key, result);
+        return true;
+    }
+
+    @Override
+    synchronized void remove(Long key, R result) {
+        final long primitive = key.longValue();
+        final Table current = table;
+        int index = current.indexOf(primitive);
+        while (true) {
+            final Object value = current.values.get(index);
+            if (null == value) {
+                return;
+            }
+            if (current.keys[index] == primitive) {
+                if (value == result) {
+                    current.values.set(index, REMOVED);
+                }
+                return;
+            }
+            index = (index + 1) & current.mask;
+        }
+    }
+
+    @Override
+    Object[] parameters(Long key) {
+        return null == unpacker ? super.parameters(key) : unpacker.call(key);
+    }
+
+    @Override
+    long size() {
+        final Table current = table;
+        long size = 0;
+        for (int i = 0; i < current.keys.length; i++) {
+            final Object value = current.values.get(i);
+            if (null != value && REMOVED != value) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void forEach(Action2<? super Long, ? super R> action) {
+        final Table current = table;
+        for (int i = 0; i < current.keys.length; i++) {
+            final Object value = current.values.get(i);
+            if (null != value && REMOVED != value) {
+                action.call(current.keys[i], (R)value);
+            }
+        }
+    }
+
+    /* Guarded by this */
+    private Table resize(Table old) {
+        int live = 0;
+        for (int i = 0; i < old.keys.length; i++) {
+            final Object value = old.values.get(i);
+            if (null != value && REMOVED != value) {
+                live++;
+            }
+        }
+        /* Removed slots are dropped, so the table only grows if it is full of results */
+        final int capacity = live + 1 > old.threshold / 2 ? old.keys.length * 2 : old.keys.length;
+        final Table resized = new Table(capacity);
+        for (int i = 0; i < old.keys.length; i++) {
+            final Object value = old.values.get(i);
+            if (null != value && REMOVED != value) {
+                int index = resized.indexOf(old.keys[i]);
+                while (null != resized.values.get(index)) {
+                    index = (index + 1) & resized.mask;
+                }
+                resized.keys[index] = old.keys[i];
+                resized.values.lazySet(index, value);
+                resized.used++;
+            }
+        }
+        /* Volatile write publishes the whole table */
+        table = resized;
+        return resized;
+    }
+
+    private static final class Table {
+        final long[] keys;
+
+        final AtomicReferenceArray<Object> values;
+
+        final int mask;
+
+        final int threshold;
+
+        /* Guarded by the cache, counts results and removed slots */
+        int used;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicReferenceArray<Object>(capacity);
+            mask = capacity - 1;
+            threshold = capacity / 3 * 2;
+        }
+
+        int indexOf(long key) {
+            long h = key;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return (int)h & mask;
+        }
+    }
+}
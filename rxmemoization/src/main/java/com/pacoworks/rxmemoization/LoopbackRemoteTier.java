@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+/**
+ * {@link RemoteTier} kept in memory, shared by every memoized function of the same process using
+ * it. Meant to test functions backed by a remote tier, or to simulate several nodes by
+ * memoizing the same function more than once, without any external service.
+ * <p/>
+ * Results are shared by reference, and invalidations are delivered synchronously to every
+ * function listening to the region.
+ *
+ * @author pakoito
+ */
+public final class LoopbackRemoteTier implements RemoteTier {
+    private final ConcurrentHashMap<String, ConcurrentHashMap<List<Object>, Object>> regions =
+            new ConcurrentHashMap<String, ConcurrentHashMap<List<Object>, Object>>();
+
+    private final ConcurrentHashMap<String, Subject<List<Object>, List<Object>>> invalidations =
+            new ConcurrentHashMap<String, Subject<List<Object>, List<Object>>>();
+
+    @Override
+    public Observable<Object> get(final String region, final List<Object> parameters) {
+        return Observable.defer(new Func0<Observable<Object>>() {
+            @Override
+            public Observable<Object> call() {
+                final Object result = region(region).get(parameters);
+                return null == result ? Observable.empty() : Observable.just(result);
+            }
+        });
+    }
+
+    @Override
+    public Observable<Map<List<Object>, Object>> getAll(final String region,
+            final Collection<List<Object>> parameters) {
+        return Observable.defer(new Func0<Observable<Map<List<Object>, Object>>>() {
+            @Override
+            public Observable<Map<List<Object>, Object>> call() {
+                final Map<List<Object>, Object> stored = region(region);
+                final Map<List<Object>, Object> results = new HashMap<List<Object>, Object>();
+                for (List<Object> call : parameters) {
+                    final Object result = stored.get(call);
+                    if (null != result) {
+                        results.put(call, result);
+                    }
+                }
+                return Observable.just(results);
+            }
+        });
+    }
+
+    @Override
+    public Observable<Void> put(final String region, final List<Object> parameters,
+            final Object result) {
+        return Observable.defer(new Func0<Observable<Void>>() {
+            @Override
+            public Observable<Void> call() {
+                region(region).put(new ArrayList<Object>(parameters), result);
+                return Observable.empty();
+            }
+        });
+    }
+
+    @Override
+    public Observable<Void> putAll(final String region, final Map<List<Object>, Object> results) {
+        return Observable.defer(new Func0<Observable<Void>>() {
+            @Override
+            public Observable<Void> call() {
+                final Map<List<Object>, Object> stored = region(region);
+                for (Map.Entry<List<Object>, Object> entry : results.entrySet()) {
+                    stored.put(new ArrayList<Object>(entry.getKey()), entry.getValue());
+                }
+                return Observable.empty();
+            }
+        });
+    }
+
+    @Override
+    public Observable<Void> invalidate(final String region, final List<Object> parameters) {
+        return Observable.defer(new Func0<Observable<Void>>() {
+            @Override
+            public Observable<Void> call() {
+                region(region).remove(parameters);
+                subject(region).onNext(new ArrayList<Object>(parameters));
+                return Observable.empty();
+            }
+        });
+    }
+
+    @Override
+    public Observable<List<Object>> invalidations(String region) {
+        return subject(region);
+    }
+
+    private ConcurrentHashMap<List<Object>, Object> region(String region) {
+        final ConcurrentHashMap<List<Object>, Object> stored = regions.get(region);
+        if (null != stored) {
+            return stored;
+        }
+        final ConcurrentHashMap<List<Object>, Object> created =
+                new ConcurrentHashMap<List<Object>, Object>();
+        final ConcurrentHashMap<List<Object>, Object> raced = regions.putIfAbsent(region, created);
+        return null == raced ? created : raced;
+    }
+
+    private Subject<List<Object>, List<Object>> subject(String region) {
+        final Subject<List<Object>, List<Object>> subject = invalidations.get(region);
+        if (null != subject) {
+            return subject;
+        }
+        final Subject<List<Object>, List<Object>> created =
+                PublishSubject.<List<Object>> create().toSerialized();
+        final Subject<List<Object>, List<Object>> raced = invalidations.putIfAbsent(region,
+                created);
+        return null == raced ? created : raced;
+    }
+}
@@ -0,0 +1,629 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import rx.exceptions.Exceptions;
+import rx.functions.Action2;
+import rx.functions.Func1;
+
+/**
+ * Result storage shared by all the memoized functions.
+ * <p/>
+ * A cache hit is a single storage check. On a cache miss the first caller registers itself as the
+ * loader of the key and every other concurrent caller for the same key waits for its result, so
+ * the wrapped function runs once per key.
+ * <p/>
+ * With a {@link NearCache} every hit is remembered by the reading thread, and with a
+ * {@link PrefixIndex} every key is indexed by its first parameter. Storages must call
+ * {@link #removed(Object)} whenever they drop a result and {@link #replaced()} whenever they
+ * replace one, so both stay up to date.
+ * <p/>
+ * With a key {@link Equivalence} every key is wrapped in an {@link EquivalenceKey} before reaching
+ * the storage, and unwrapped before reaching the loader.
+ * <p/>
+ * Invalidating a key being loaded lets the callers waiting for it get the result, but drops it
+ * from the storage right after it is stored.
+ *
+ * @author pakoito
+ */
+abstract class MemoCache<K, R> {
+    /* Stored instead of a null key or a null result */
+    static final Object NULL = new Object();
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<MemoCache> GENERATION = AtomicIntegerFieldUpdater
+            .newUpdater(MemoCache.class, "generation");
+
+    private final ConcurrentHashMap<K, Loading<R>> loading = new ConcurrentHashMap<K, Loading<R>>();
+
+    final Func1<? super K, ? extends R> loader;
+
+    /* Null if stats are not recorded */
+    final StatsCounter stats;
+
+    /* Null if results are only read from the storage */
+    private final NearCache<K, R> nearCache;
+
+    /* Null if failures are not cached */
+    private final FailureCache<K> failures;
+
+    /* Null if keys are not indexed */
+    private final PrefixIndex<K> index;
+
+    /* Null if parameters are compared with equals */
+    private final Equivalence<Object> keyEquivalence;
+
+    /* Null without a remote tier */
+    final RemoteRegion remote;
+
+    private volatile int generation;
+
+    MemoCache(Func1<? super K, ? extends R> loader) {
+        this.loader = loader;
+        this.stats = null;
+        this.nearCache = null;
+        this.failures = null;
+        this.index = null;
+        this.keyEquivalence = null;
+        this.remote = null;
+    }
+
+    MemoCache(Func1<? super K, ? extends R> loader, MemoizationBuilder builder) {
+        this.remote = builder.newRemoteRegion();
+        if (null == remote) {
+            this.loader = loader;
+        } else {
+            this.loader = remote.<K, R> loading(loader);
+        }
+        this.stats = builder.newStatsCounter();
+        this.nearCache = builder.newNearCache();
+        this.failures = builder.newFailureCache();
+        this.index = builder.newPrefixIndex();
+        this.keyEquivalence = builder.getKeyEquivalence();
+    }
+
+    /**
+     * Returns the stored result for the key
+     *
+     * @param key key to look up, never null
+     * @return stored result, {@link #NULL} for a null result, or null if absent
+     */
+    abstract R getIfPresent(K key);
+
+    /**
+     * Returns whether a result is stored for the key, expired or not, without touching it
+     *
+     * @param key key to look up, never null
+     * @return true if a result is stored
+     */
+    boolean isStored(K key) {
+        return null != getIfPresent(key);
+    }
+
+    /**
+     * Stores a freshly computed result for the key
+     *
+     * @param key key to store, never null
+     * @param result result to store, never null
+     */
+    abstract void put(K key, R result);
+
+    /**
+     * Stores a result computed elsewhere for the key, only if no result is stored for it
+     *
+     * @param key key to store, never null
+     * @param result result to store, never null
+     * @return true if the result was stored
+     */
+    abstract boolean putIfAbsent(K key, R result);
+
+    /**
+     * Removes the result stored for the key, only if it is still the given one
+     *
+     * @param key key to remove
+     * @param result result expected to be stored
+     */
+    abstract void remove(K key, R result);
+
+    /**
+     * Returns the approximate number of stored results
+     *
+     * @return number of results
+     */
+    abstract long size();
+
+    /**
+     * Visits every stored result
+     *
+     * @param action action applied to each stored key and result, which may be {@link #NULL}
+     */
+    abstract void forEach(Action2<? super K, ? super R> action);
+
+    /**
+     * Called by the storage after dropping the result of a key
+     *
+     * @param key stored key
+     */
+    final void removed(K key) {
+        if (null != index) {
+            index.remove(key, this);
+        }
+        replaced();
+    }
+
+    /**
+     * Called by the storage after replacing the result of a key, discarding the results remembered
+     * by every {@link NearCache}
+     */
+    @SuppressWarnings("unchecked")
+    final void replaced() {
+        if (null != nearCache) {
+            GENERATION.incrementAndGet(this);
+        }
+    }
+
+    /**
+     * Drops the result stored for the key, only from this node
+     *
+     * @param lookupKey key to drop
+     */
+    final void invalidate(K lookupKey) {
+        final K maskedKey = wrap(maskKey(lookupKey));
+        final Loading<R> pending = loading.get(maskedKey);
+        if (null != pending) {
+            pending.invalidated = true;
+        }
+        final R stored = getIfPresent(maskedKey);
+        if (null != stored) {
+            remove(maskedKey, stored);
+        }
+        invalidated(lookupKey);
+    }
+
+    /**
+     * Drops every stored result, and publishes the dropped keys to the remote tier
+     */
+    final void invalidateAll() {
+        for (Loading<R> pending : loading.values()) {
+            pending.invalidated = true;
+        }
+        final List<K> dropped = null == remote ? null : new ArrayList<K>();
+        removeAll(null, dropped);
+        invalidated(matching(null, dropped));
+        published(dropped);
+    }
+
+    /**
+     * Drops the results of every key with several parameters starting with the given ones, and
+     * publishes the dropped keys to the remote tier
+     *
+     * @param prefix leading parameters, compared with {@link Object#equals(Object)}
+     */
+    final void invalidatePrefix(final Object[] prefix) {
+        for (Map.Entry<K, Loading<R>> entry : loading.entrySet()) {
+            if (startsWith(entry.getKey(), prefix)) {
+                entry.getValue().invalidated = true;
+            }
+        }
+        final List<K> dropped = null == remote ? null : new ArrayList<K>();
+        if (null == index) {
+            removeAll(prefix, dropped);
+        } else {
+            for (K key : index.get(prefix[0])) {
+                if (startsWith(key, prefix)) {
+                    final R stored = getIfPresent(key);
+                    if (null != stored) {
+                        remove(key, stored);
+                        if (null != dropped) {
+                            dropped.add(unmask(key));
+                        }
+                    }
+                }
+            }
+        }
+        invalidated(matching(prefix, dropped));
+        published(dropped);
+    }
+
+    /**
+     * Drops the result of an invalidated key from any tier behind the storage, which
+     * {@link #getIfPresent(Object)} and {@link #forEach(Action2)} don't see
+     *
+     * @param key invalidated key, as passed to the loader
+     */
+    void invalidated(K key) {
+    }
+
+    /**
+     * Drops the results of the invalidated keys from any tier behind the storage
+     *
+     * @param matches predicate on the keys, as passed to the loader
+     */
+    void invalidated(Func1<? super K, Boolean> matches) {
+    }
+
+    /* Collects the keys it matches into dropped, unless null */
+    private Func1<K, Boolean> matching(final Object[] prefix, final List<K> dropped) {
+        return new Func1<K, Boolean>() {
+            @Override
+            public Boolean call(K key) {
+                if (null != prefix && !startsWith(key, prefix)) {
+                    return false;
+                }
+                if (null != dropped) {
+                    dropped.add(key);
+                }
+                return true;
+            }
+        };
+    }
+
+    private void removeAll(final Object[] prefix, List<K> dropped) {
+        final List<K> keys = new ArrayList<K>();
+        final List<R> results = new ArrayList<R>();
+        forEach(new Action2<K, R>() {
+            @Override
+            public void call(K key, R result) {
+                if (null == prefix || startsWith(key, prefix)) {
+                    keys.add(key);
+                    results.add(result);
+                }
+            }
+        });
+        for (int i = 0; i < keys.size(); i++) {
+            remove(keys.get(i), results.get(i));
+            if (null != dropped) {
+                dropped.add(unmask(keys.get(i)));
+            }
+        }
+    }
+
+    private void published(List<K> dropped) {
+        if (null != dropped) {
+            remote.invalidate(dropped);
+        }
+    }
+
+    /**
+     * Stores a result computed elsewhere, unless the key already has a result or is being loaded
+     *
+     * @param key stored key, never a {@link ReusableKey} probe
+     * @param result result to store
+     * @return true if the result was stored
+     */
+    final boolean restore(K key, R result) {
+        final K maskedKey = wrap(maskKey(key));
+        if (loading.containsKey(maskedKey) || !putIfAbsent(maskedKey, mask(result))) {
+            return false;
+        }
+        if (null != index) {
+            index.add(maskedKey);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the cached result for the key, computing it with the loader if absent
+     *
+     * @param lookupKey key to look up, copied before being stored if it is a {@link ReusableKey}
+     * @return cached or computed result
+     */
+    final R get(K lookupKey) {
+        if (null == keyEquivalence) {
+            return getMasked(maskKey(lookupKey));
+        }
+        final K probe = probe(maskKey(lookupKey));
+        try {
+            return getMasked(probe);
+        } finally {
+            clear(probe);
+        }
+    }
+
+    private R getMasked(K maskedKey) {
+        final int generation = null == nearCache ? 0 : this.generation;
+        if (null != nearCache) {
+            final R near = nearCache.get(maskedKey, generation);
+            if (null != near) {
+                if (null != stats) {
+                    stats.recordHit();
+                }
+                return unmask(near);
+            }
+        }
+        final R cached = getIfPresent(maskedKey);
+        if (null != cached) {
+            if (null != stats) {
+                stats.recordHit();
+            }
+            if (null != nearCache) {
+                /* Read after the generation, so a result dropped since then is never used */
+                nearCache.put(storedKey(maskedKey), cached, generation);
+            }
+            return unmask(cached);
+        }
+        if (null != stats) {
+            stats.recordMiss();
+        }
+        if (null != failures) {
+            failures.check(maskedKey);
+        }
+        final K key = storedKey(maskedKey);
+        final Loading<R> mine = new Loading<R>();
+        final Loading<R> other = loading.putIfAbsent(key, mine);
+        if (null != other) {
+            if (other.owner == Thread.currentThread()) {
+                /* Waiting for ourselves would never return */
+                throw new IllegalStateException("Recursive call with the same parameters");
+            }
+            return other.await();
+        }
+        try {
+            /* A load may have finished between the first check and the registration */
+            final R loaded = getIfPresent(key);
+            if (null != loaded) {
+                mine.complete(unmask(loaded));
+                return unmask(loaded);
+            }
+            final R result = load(key);
+            put(key, mask(result));
+            if (null != index) {
+                index.add(key);
+            }
+            if (mine.invalidated) {
+                remove(key, mask(result));
+            }
+            if (null != failures) {
+                failures.succeeded(key);
+            }
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            if (null != failures) {
+                failures.failed(key, e);
+            }
+            mine.fail(e);
+            throw e;
+        } catch (Error e) {
+            mine.fail(e);
+            throw e;
+        } finally {
+            /* Removed after the result is stored so late callers always find one or the other */
+            loading.remove(key, mine);
+        }
+    }
+
+    /**
+     * Returns the stored result for the key without computing it if absent
+     *
+     * @param lookupKey key to look up
+     * @return stored result, {@link #NULL} for a null result, or null if absent
+     */
+    final R getIfStored(K lookupKey) {
+        final K probe = probe(maskKey(lookupKey));
+        try {
+            final R cached = getIfPresent(probe);
+            if (null != cached && null != stats) {
+                stats.recordHit();
+            }
+            return cached;
+        } finally {
+            clear(probe);
+        }
+    }
+
+    /**
+     * Returns the key the result for a lookup key is loaded and stored under, equal for every
+     * lookup key with equivalent parameters
+     *
+     * @param lookupKey key to look up, never a {@link ReusableKey} probe
+     * @return key that can be kept
+     */
+    final K loadingKey(K lookupKey) {
+        return wrap(maskKey(lookupKey));
+    }
+
+    /**
+     * Returns whether lookup keys need their own hash, false when the cache wraps them in an
+     * {@link EquivalenceKey} hashing their parameters with the key equivalence
+     *
+     * @return true if lookup keys are compared with their own equals and hashCode
+     */
+    final boolean hashesKeys() {
+        return null == keyEquivalence;
+    }
+
+    /**
+     * Removes the result stored for a key the loader was called with, only if it is still the given
+     * one
+     *
+     * @param loadedKey key passed to the loader
+     * @param result result expected to be stored
+     */
+    final void removeLoaded(K loadedKey, R result) {
+        final K probe = probe(maskKey(loadedKey));
+        try {
+            remove(probe, result);
+        } finally {
+            clear(probe);
+        }
+    }
+
+    /**
+     * Calls the loader, timing it if stats are recorded
+     *
+     * @param key stored key to load
+     * @return loaded result, may be null
+     */
+    @SuppressWarnings("unchecked")
+    final R load(K key) {
+        final Object unwrappedKey = key instanceof EquivalenceKey ? ((EquivalenceKey)key).key : key;
+        final K unmaskedKey = NULL == unwrappedKey ? null : (K)unwrappedKey;
+        if (null == stats) {
+            return loader.call(unmaskedKey);
+        }
+        final long start = System.nanoTime();
+        try {
+            return loader.call(unmaskedKey);
+        } finally {
+            stats.recordLoad(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the parameters of the call whose result is stored under the key
+     *
+     * @param key stored key
+     * @return parameters of the call
+     */
+    Object[] parameters(K key) {
+        if (!(key instanceof ReusableKey)) {
+            return new Object[] {
+                    unmask(key)
+            };
+        }
+        final ReusableKey reusableKey = (ReusableKey)key;
+        final Object[] parameters = new Object[reusableKey.arity()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = reusableKey.arg(i);
+        }
+        return parameters;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <R> R mask(R result) {
+        return null == result ? (R)NULL : result;
+    }
+
+    static <R> R unmask(R stored) {
+        return NULL == stored ? null : stored;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K maskKey(K key) {
+        return null == key ? (K)NULL : key;
+    }
+
+    /* Functions without parameters are their own key */
+    @SuppressWarnings("unchecked")
+    private K wrap(K maskedKey) {
+        if (null == keyEquivalence || maskedKey instanceof Memoized) {
+            return maskedKey;
+        }
+        return (K)new EquivalenceKey().set(keyEquivalence, maskedKey);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K probe(K maskedKey) {
+        if (null == keyEquivalence || maskedKey instanceof Memoized) {
+            return maskedKey;
+        }
+        return (K)EquivalenceKey.probe(keyEquivalence, maskedKey);
+    }
+
+    private static void clear(Object probe) {
+        if (probe instanceof EquivalenceKey) {
+            ((EquivalenceKey)probe).clear();
+        }
+    }
+
+    private boolean startsWith(K key, Object[] prefix) {
+        if (!(key instanceof ReusableKey)) {
+            final Object[] parameters = parameters(key);
+            if (parameters.length < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (null == parameters[i] ? null != prefix[i] : !parameters[i].equals(prefix[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        final ReusableKey reusableKey = (ReusableKey)key;
+        if (reusableKey.arity() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            final Object arg = reusableKey.arg(i);
+            if (null == arg ? null != prefix[i] : !arg.equals(prefix[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K storedKey(K key) {
+        return key instanceof ReusableKey ? (K)((ReusableKey)key).copy() : key;
+    }
+
+    /**
+     * Result of a computation that other threads can wait for.
+     */
+    static final class Loading<R> {
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        final Thread owner = Thread.currentThread();
+
+        /* Set when the key is invalidated while loading */
+        volatile boolean invalidated;
+
+        private R result;
+
+        private Throwable error;
+
+        void complete(R result) {
+            this.result = result;
+            latch.countDown();
+        }
+
+        void fail(Throwable error) {
+            this.error = error;
+            latch.countDown();
+        }
+
+        R await() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        latch.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (null != error) {
+                throw Exceptions.propagate(error);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,1693 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.pacoworks.rxmemoization.ArgKeys.Key2;
+import com.pacoworks.rxmemoization.ArgKeys.Key3;
+import com.pacoworks.rxmemoization.ArgKeys.Key4;
+import com.pacoworks.rxmemoization.ArgKeys.Key5;
+import com.pacoworks.rxmemoization.ArgKeys.Key6;
+import com.pacoworks.rxmemoization.ArgKeys.Key7;
+import com.pacoworks.rxmemoization.ArgKeys.Key8;
+import com.pacoworks.rxmemoization.ArgKeys.Key9;
+import com.pacoworks.rxmemoization.Memoized.Memoized0;
+import com.pacoworks.rxmemoization.Memoized.Memoized1;
+import com.pacoworks.rxmemoization.Memoized.Memoized2;
+import com.pacoworks.rxmemoization.Memoized.Memoized3;
+import com.pacoworks.rxmemoization.Memoized.Memoized4;
+import com.pacoworks.rxmemoization.Memoized.Memoized5;
+import com.pacoworks.rxmemoization.Memoized.Memoized6;
+import com.pacoworks.rxmemoization.Memoized.Memoized7;
+import com.pacoworks.rxmemoization.Memoized.Memoized8;
+import com.pacoworks.rxmemoization.Memoized.Memoized9;
+import com.pacoworks.rxmemoization.Memoized.MemoizedN;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.functions.Func3;
+import rx.functions.Func4;
+import rx.functions.Func5;
+import rx.functions.Func6;
+import rx.functions.Func7;
+import rx.functions.Func8;
+import rx.functions.Func9;
+import rx.functions.FuncN;
+import rx.schedulers.Schedulers;
+
+/**
+ * Builder to configure how memoized functions store their results.
+ * <p/>
+ * A builder can be reused, and every function memoized with it gets its own storage.
+ *
+ * @author pakoito
+ * @see RxMemoization#builder()
+ */
+public final class MemoizationBuilder {
+    private static final long UNSET = -1;
+
+    private static final int MAXIMUM_THREAD_LOCAL_SIZE = 1024;
+
+    private long maximumSize = UNSET;
+
+    private EvictionPolicy evictionPolicy = EvictionPolicy.SEGMENTED_LRU;
+
+    private AdmissionPolicy admissionPolicy = AdmissionPolicy.ALWAYS;
+
+    private long expireAfterWriteNanos = UNSET;
+
+    private long expireAfterAccessNanos = UNSET;
+
+    private long refreshAfterWriteNanos = UNSET;
+
+    private Scheduler refreshScheduler = Schedulers.io();
+
+    private Scheduler asyncScheduler = Schedulers.io();
+
+    private Ticker ticker = Ticker.SYSTEM;
+
+    private boolean recordStats;
+
+    private boolean weakKeys;
+
+    private boolean softValues;
+
+    private long offHeapBytes = UNSET;
+
+    private Codec<?> codec;
+
+    private int threadLocalSize;
+
+    private long failureBackoffNanos = UNSET;
+
+    private long maximumFailureBackoffNanos = UNSET;
+
+    private boolean indexByFirstParameter;
+
+    private Equivalence<Object> keyEquivalence;
+
+    private MemoizationPool pool;
+
+    private RemoteTier remoteTier;
+
+    private String remoteRegion;
+
+    MemoizationBuilder() {
+    }
+
+    /**
+     * Limits the number of results stored by each memoized function. Once the limit is reached
+     * older results are dropped following the {@link EvictionPolicy}.
+     *
+     * @param maximumSize maximum number of results per function
+     * @return this builder
+     */
+    public MemoizationBuilder maximumSize(long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximumSize must not be negative: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        return this;
+    }
+
+    /**
+     * Sets the policy choosing which results to drop once the maximum size is reached. Defaults to
+     * {@link EvictionPolicy#SEGMENTED_LRU}.
+     *
+     * @param evictionPolicy policy to use
+     * @return this builder
+     */
+    public MemoizationBuilder evictionPolicy(EvictionPolicy evictionPolicy) {
+        if (null == evictionPolicy) {
+            throw new NullPointerException("evictionPolicy");
+        }
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
+    /**
+     * Sets the policy deciding whether new results are stored once the maximum size is reached.
+     * Defaults to {@link AdmissionPolicy#ALWAYS}.
+     *
+     * @param admissionPolicy policy to use
+     * @return this builder
+     */
+    public MemoizationBuilder admissionPolicy(AdmissionPolicy admissionPolicy) {
+        if (null == admissionPolicy) {
+            throw new NullPointerException("admissionPolicy");
+        }
+        this.admissionPolicy = admissionPolicy;
+        return this;
+    }
+
+    /**
+     * Expires each result once the given time has passed since it was computed, so the function
+     * is called again for the same parameters.
+     *
+     * @param duration time to keep each result
+     * @param unit unit of the duration
+     * @return this builder
+     */
+    public MemoizationBuilder expireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWriteNanos = toNanos("expireAfterWrite", duration, unit);
+        return this;
+    }
+
+    /**
+     * Expires each result once the given time has passed since it was last returned, so the
+     * function is called again for the same parameters.
+     *
+     * @param duration time to keep each unused result
+     * @param unit unit of the duration
+     * @return this builder
+     */
+    public MemoizationBuilder expireAfterAccess(long duration, TimeUnit unit) {
+        this.expireAfterAccessNanos = toNanos("expireAfterAccess", duration, unit);
+        return this;
+    }
+
+    /**
+     * Reloads each result in the background once the given time has passed since it was computed.
+     * Until the reload finishes the old result keeps being returned, so callers never wait for it.
+     * Reload errors are sent to the RxJava error handler and the old result is kept.
+     *
+     * @param duration time after which a result is reloaded on its next use
+     * @param unit unit of the duration
+     * @return this builder
+     * @see #refreshScheduler(Scheduler)
+     */
+    public MemoizationBuilder refreshAfterWrite(long duration, TimeUnit unit) {
+        this.refreshAfterWriteNanos = toNanos("refreshAfterWrite", duration, unit);
+        return this;
+    }
+
+    /**
+     * Keeps the exception thrown by the function for the given parameters during the given time,
+     * rethrowing it to every caller instead of calling the function again. Errors such as
+     * {@link OutOfMemoryError} are never kept.
+     *
+     * @param duration time to keep each failure
+     * @param unit unit of the duration
+     * @return this builder
+     * @see #cacheFailures(long, long, TimeUnit)
+     */
+    public MemoizationBuilder cacheFailures(long duration, TimeUnit unit) {
+        return cacheFailures(duration, duration, unit);
+    }
+
+    /**
+     * Keeps the exception thrown by the function for the given parameters during a backoff time,
+     * rethrowing it to every caller instead of calling the function again. The backoff starts at
+     * the initial time and doubles on every consecutive failure up to the maximum, and a success
+     * resets it. Errors such as {@link OutOfMemoryError} are never kept.
+     * <p/>
+     * Every caller gets the same exception instance, so it must not be modified after catching it.
+     *
+     * @param initialBackoff time to keep the first failure
+     * @param maximumBackoff maximum time to keep a failure
+     * @param unit unit of the backoff times
+     * @return this builder
+     */
+    public MemoizationBuilder cacheFailures(long initialBackoff, long maximumBackoff,
+            TimeUnit unit) {
+        final long initialNanos = toNanos("initialBackoff", initialBackoff, unit);
+        final long maximumNanos = toNanos("maximumBackoff", maximumBackoff, unit);
+        if (maximumNanos < initialNanos) {
+            throw new IllegalArgumentException("maximumBackoff must not be less than "
+                    + "initialBackoff: " + maximumBackoff + " < " + initialBackoff);
+        }
+        this.failureBackoffNanos = initialNanos;
+        this.maximumFailureBackoffNanos = maximumNanos;
+        return this;
+    }
+
+    /**
+     * Sets the scheduler reloads run on. Defaults to {@link Schedulers#io()}.
+     *
+     * @param refreshScheduler scheduler for reloads
+     * @return this builder
+     */
+    public MemoizationBuilder refreshScheduler(Scheduler refreshScheduler) {
+        if (null == refreshScheduler) {
+            throw new NullPointerException("refreshScheduler");
+        }
+        this.refreshScheduler = refreshScheduler;
+        return this;
+    }
+
+    /**
+     * Sets the scheduler misses of {@link #memoizeAsync(Func1)} and its other arities are computed
+     * on. Defaults to {@link Schedulers#io()}.
+     *
+     * @param asyncScheduler scheduler for asynchronous loads
+     * @return this builder
+     */
+    public MemoizationBuilder asyncScheduler(Scheduler asyncScheduler) {
+        if (null == asyncScheduler) {
+            throw new NullPointerException("asyncScheduler");
+        }
+        this.asyncScheduler = asyncScheduler;
+        return this;
+    }
+
+    /**
+     * Sets the source of time used to expire and refresh results. Defaults to
+     * {@link Ticker#SYSTEM}.
+     *
+     * @param ticker source of time
+     * @return this builder
+     */
+    public MemoizationBuilder ticker(Ticker ticker) {
+        if (null == ticker) {
+            throw new NullPointerException("ticker");
+        }
+        this.ticker = ticker;
+        return this;
+    }
+
+    /**
+     * Uses the clock of a {@link Scheduler} to expire and refresh results, such as a
+     * {@link rx.schedulers.TestScheduler} in tests.
+     *
+     * @param scheduler scheduler whose {@link Scheduler#now()} is the source of time
+     * @return this builder
+     */
+    public MemoizationBuilder ticker(final Scheduler scheduler) {
+        if (null == scheduler) {
+            throw new NullPointerException("scheduler");
+        }
+        return ticker(new Ticker() {
+            @Override
+            public long read() {
+                return TimeUnit.MILLISECONDS.toNanos(scheduler.now());
+            }
+        });
+    }
+
+    /**
+     * Holds the parameters of each result through weak references, so a result is dropped once any
+     * of its parameters is garbage collected. Parameters are compared by identity instead of
+     * {@link Object#equals(Object)}.
+     * <p/>
+     * Can't be combined with a maximum size, expiration or refresh.
+     *
+     * @return this builder
+     */
+    public MemoizationBuilder weakKeys() {
+        this.weakKeys = true;
+        return this;
+    }
+
+    /**
+     * Holds each result through a soft reference, so results can be garbage collected when the
+     * heap runs low and are computed again on their next call.
+     * <p/>
+     * Can't be combined with a maximum size, expiration or refresh.
+     *
+     * @return this builder
+     */
+    public MemoizationBuilder softValues() {
+        this.softValues = true;
+        return this;
+    }
+
+    /**
+     * Adds a second storage tier outside of the heap. Results evicted because of the maximum size
+     * are serialized with the codec into a direct buffer of the given capacity instead of being
+     * dropped, and moved back to the heap the next time they are needed. Once the buffer is full
+     * the oldest results are overwritten.
+     * <p/>
+     * Requires a {@link #maximumSize(long)}, and the codec must support the results of every
+     * function memoized with this builder.
+     *
+     * @param maximumBytes capacity of the off-heap buffer of each function, up to 2GB
+     * @param codec codec serializing the results
+     * @return this builder
+     */
+    public MemoizationBuilder offHeap(long maximumBytes, Codec<?> codec) {
+        if (maximumBytes < 0 || maximumBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maximumBytes must be between 0 and "
+                    + Integer.MAX_VALUE + ": " + maximumBytes);
+        }
+        if (null == codec) {
+            throw new NullPointerException("codec");
+        }
+        this.offHeapBytes = maximumBytes;
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Adds a small table per thread in front of the storage of each memoized function. Hits are
+     * remembered by the thread reading them, so later calls for the same parameters on that
+     * thread skip the shared storage. Every copy is discarded whenever a result is evicted or
+     * removed from the storage.
+     * <p/>
+     * Meant for a few dozen hot parameters read from many threads. Can't be combined with
+     * expiration, refresh, {@link #weakKeys()} or {@link #softValues()}.
+     *
+     * @param size number of results remembered by each thread, up to 1024
+     * @return this builder
+     */
+    public MemoizationBuilder threadLocalCache(int size) {
+        if (size <= 0 || size > MAXIMUM_THREAD_LOCAL_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and "
+                    + MAXIMUM_THREAD_LOCAL_SIZE + ": " + size);
+        }
+        this.threadLocalSize = size;
+        return this;
+    }
+
+    /**
+     * Compares and hashes each parameter with the given strategy instead of
+     * {@link Object#equals(Object)} and {@link Object#hashCode()}. Use {@link Equivalence#IDENTITY}
+     * for large immutable parameters that are expensive to hash, or
+     * {@link Equivalence#onResultOf(Func1)} to only look at the part of a parameter that matters.
+     * <p/>
+     * Can't be combined with {@link #weakKeys()}, which always compares by identity, or
+     * {@link #offHeap(long, Codec)}.
+     *
+     * @param keyEquivalence strategy applied to every parameter
+     * @return this builder
+     */
+    public MemoizationBuilder keyEquivalence(Equivalence<Object> keyEquivalence) {
+        if (null == keyEquivalence) {
+            throw new NullPointerException("keyEquivalence");
+        }
+        this.keyEquivalence = Equivalence.EQUALS == keyEquivalence ? null : keyEquivalence;
+        return this;
+    }
+
+    /**
+     * Indexes the results of functions with several parameters by their first parameter, so
+     * {@link MemoizationInvalidator#invalidatePrefix(Object...)} finds them without scanning the
+     * whole storage. Useful to drop everything computed for a tenant or a user at once, at the
+     * cost of some memory per stored result.
+     * <p/>
+     * Can't be combined with {@link #weakKeys()} or {@link #softValues()}.
+     *
+     * @return this builder
+     */
+    public MemoizationBuilder indexByFirstParameter() {
+        this.indexByFirstParameter = true;
+        return this;
+    }
+
+    /**
+     * Stores the results in a pool shared with other memoized functions, which evicts the least
+     * recently used results of all of them once their total weight goes over its budget.
+     * <p/>
+     * Can't be combined with {@link #maximumSize(long)}, expiration, refresh,
+     * {@link #weakKeys()}, {@link #softValues()} or {@link #offHeap(long, Codec)}.
+     *
+     * @param pool pool holding the results
+     * @return this builder
+     */
+    public MemoizationBuilder pool(MemoizationPool pool) {
+        if (null == pool) {
+            throw new NullPointerException("pool");
+        }
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Looks up missing results in a {@link RemoteTier} shared with other nodes before calling the
+     * function, and writes new results to it. The local results are dropped whenever any node
+     * publishes an invalidation with {@link RemoteTier#invalidate(String, java.util.List)}, and
+     * invalidating the function through {@link MemoizationInvalidator} publishes the dropped
+     * results so they are computed again.
+     * <p/>
+     * Each function needs its own region, with the same name on every node. Can't be combined
+     * with {@link #weakKeys()} or {@link #keyEquivalence(Equivalence)}, as the tier compares
+     * parameters with {@link Object#equals(Object)}, nor with observables. Can't be combined with
+     * expiration or refresh either, as the tier would serve the expired result again.
+     *
+     * @param remoteTier tier shared by every node
+     * @param region name of the function in the tier
+     * @return this builder
+     */
+    public MemoizationBuilder remoteTier(RemoteTier remoteTier, String region) {
+        if (null == remoteTier) {
+            throw new NullPointerException("remoteTier");
+        }
+        if (null == region) {
+            throw new NullPointerException("region");
+        }
+        this.remoteTier = remoteTier;
+        this.remoteRegion = region;
+        return this;
+    }
+
+    /**
+     * Records hits, misses, loads and evictions of each memoized function, available by casting it
+     * to {@link MemoizationStats}. Without it the counters cost nothing and are always zero.
+     *
+     * @return this builder
+     */
+    public MemoizationBuilder recordStats() {
+        this.recordStats = true;
+        return this;
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     * 
+     * @param func0 function to wrap
+     * @return function caching results
+     */
+    public <R> Func0<R> memoize(final Func0<R> func0) {
+        if (hasPolicy() || hasReferences() || recordStats || UNSET != failureBackoffNanos
+                || null != pool || null != remoteTier) {
+            final Func1<Object, R> loader = new Func1<Object, R>() {
+                @Override
+                public R call(Object key) {
+                    return func0.call();
+                }
+            };
+            final MemoCache<Object, R> cache = this.<Object, R> newCache(loader);
+            return registered(new Memoized0<R>(cache) {
+                @Override
+                public R call() {
+                    return cache.get(this);
+                }
+            });
+        }
+        return new Memoized0<R>(null) {
+            private volatile R value;
+
+            @Override
+            public R call() {
+                R current = value;
+                if (null == current) {
+                    synchronized (this) {
+                        current = value;
+                        if (null == current) {
+                            current = MemoCache.mask(func0.call());
+                            value = current;
+                        }
+                    }
+                }
+                return MemoCache.unmask(current);
+            }
+
+            @Override
+            public long size() {
+                return null == value ? 0 : 1;
+            }
+
+            @Override
+            public void invalidateAll() {
+                /* Waits for a computation in progress so its result is dropped too */
+                synchronized (this) {
+                    value = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param func1 function to wrap
+     * @return function caching results
+     */
+    public <A, R> Func1<A, R> memoize(final Func1<A, R> func1) {
+        final MemoCache<A, R> cache = this.<A, R> newCache(func1);
+        return registered(new Memoized1<A, R>(cache) {
+            @Override
+            public R call(A a) {
+                return cache.get(a);
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param func2 function to wrap
+     * @return function caching results
+     */
+    public <A, B, R> Func2<A, B, R> memoize(final Func2<A, B, R> func2) {
+        final Func1<Key2, R> loader = new Func1<Key2, R>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R call(Key2 key) {
+                return func2.call((A)key.a, (B)key.b);
+            }
+        };
+        final MemoCache<Key2, R> cache = this.<Key2, R> newCache(loader);
+        return registered(new Memoized2<A, B, R>(cache) {
+            @Override
+            public R call(A a, B b) {
+                final Key2 probe = cache.hashesKeys() ? Key2.probe(a, b) : Key2.unhashedProbe(a, b);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param func3 function to wrap
+     * @return function caching results
+     */
+    public <A, B, C, R> Func3<A, B, C, R> memoize(final Func3<A, B, C, R> func3) {
+        final Func1<Key3, R> loader = new Func1<Key3, R>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R call(Key3 key) {
+                return func3.call((A)key.a, (B)key.b, (C)key.c);
+            }
+        };
+        final MemoCache<Key3, R> cache = this.<Key3, R> newCache(loader);
+        return registered(new Memoized3<A, B, C, R>(cache) {
+            @Override
+            public R call(A a, B b, C c) {
+                final Key3 probe = cache.hashesKeys() ? Key3.probe(a, b, c)
+                        : Key3.unhashedProbe(a, b, c);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param func4 function to wrap
+     * @return function caching results
+     */
+    public <A, B, C, D, R> Func4<A, B, C, D, R> memoize(final Func4<A, B, C, D, R> func4) {
+        final Func1<Key4, R> loader = new Func1<Key4, R>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R call(Key4 key) {
+                return func4.call((A)key.a, (B)key.b, (C)key.c,
+                        (D)key.d);
+            }
+        };
+        final MemoCache<Key4, R> cache = this.<Key4, R> newCache(loader);
+        return registered(new Memoized4<A, B, C, D, R>(cache) {
+            @Override
+            public R call(A a, B b, C c, D d) {
+                final Key4 probe = cache.hashesKeys() ? Key4.probe(a, b, c, d)
+                        : Key4.unhashedProbe(a, b, c, d);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param func5 function to wrap
+     * @return function caching results
+     */
+    public <A, B, C, D, E, R> Func5<A, B, C, D, E, R> memoize(
+            final Func5<A, B, C, D, E, R> func5) {
+        final Func1<Key5, R> loader = new Func1<Key5, R>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R call(Key5 key) {
+                return func5.call((A)key.a, (B)key.b, (C)key.c,
+                        (D)key.d, (E)key.e);
+            }
+        };
+        final MemoCache<Key5, R> cache = this.<Key5, R> newCache(loader);
+        return registered(new Memoized5<A, B, C, D, E, R>(cache) {
+            @Override
+            public R call(A a, B b, C c, D d, E e) {
+                final Key5 probe = cache.hashesKeys() ? Key5.probe(a, b, c, d, e)
+                        : Key5.unhashedProbe(a, b, c, d, e);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param func6 function to wrap
+     * @return function caching results
+     */
+    public <A, B, C, D, E, F, R> Func6<A, B, C, D, E, F, R> memoize(
+            final Func6<A, B, C, D, E, F, R> func6) {
+        final Func1<Key6, R> loader = new Func1<Key6, R>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R call(Key6 key) {
+                return func6.call((A)key.a, (B)key.b, (C)key.c,
+                        (D)key.d, (E)key.e, (F)key.f);
+            }
+        };
+        final MemoCache<Key6, R> cache = this.<Key6, R> newCache(loader);
+        return registered(new Memoized6<A, B, C, D, E, F, R>(cache) {
+            @Override
+            public R call(A a, B b, C c, D d, E e, F f) {
+                final Key6 probe = cache.hashesKeys() ? Key6.probe(a, b, c, d, e, f)
+                        : Key6.unhashedProbe(a, b, c, d, e, f);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param func7 function to wrap
+     * @return function caching results
+     */
+    public <A, B, C, D, E, F, G, R> Func7<A, B, C, D, E, F, G, R> memoize(
+            final Func7<A, B, C, D, E, F, G, R> func7) {
+        final Func1<Key7, R> loader = new Func1<Key7, R>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R call(Key7 key) {
+                return func7.call((A)key.a, (B)key.b, (C)key.c,
+                        (D)key.d, (E)key.e, (F)key.f,
+                        (G)key.g);
+            }
+        };
+        final MemoCache<Key7, R> cache = this.<Key7, R> newCache(loader);
+        return registered(new Memoized7<A, B, C, D, E, F, G, R>(cache) {
+            @Override
+            public R call(A a, B b, C c, D d, E e, F f, G g) {
+                final Key7 probe = cache.hashesKeys() ? Key7.probe(a, b, c, d, e, f, g)
+                        : Key7.unhashedProbe(a, b, c, d, e, f, g);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param func8 function to wrap
+     * @return function caching results
+     */
+    public <A, B, C, D, E, F, G, H, R> Func8<A, B, C, D, E, F, G, H, R> memoize(
+            final Func8<A, B, C, D, E, F, G, H, R> func8) {
+        final Func1<Key8, R> loader = new Func1<Key8, R>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R call(Key8 key) {
+                return func8.call((A)key.a, (B)key.b, (C)key.c,
+                        (D)key.d, (E)key.e, (F)key.f,
+                        (G)key.g, (H)key.h);
+            }
+        };
+        final MemoCache<Key8, R> cache = this.<Key8, R> newCache(loader);
+        return registered(new Memoized8<A, B, C, D, E, F, G, H, R>(cache) {
+            @Override
+            public R call(A a, B b, C c, D d, E e, F f, G g, H h) {
+                final Key8 probe = cache.hashesKeys() ? Key8.probe(a, b, c, d, e, f, g, h)
+                        : Key8.unhashedProbe(a, b, c, d, e, f, g, h);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param func9 function to wrap
+     * @return function caching results
+     */
+    public <A, B, C, D, E, F, G, H, I, R> Func9<A, B, C, D, E, F, G, H, I, R> memoize(
+            final Func9<A, B, C, D, E, F, G, H, I, R> func9) {
+        final Func1<Key9, R> loader = new Func1<Key9, R>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R call(Key9 key) {
+                return func9.call((A)key.a, (B)key.b, (C)key.c,
+                        (D)key.d, (E)key.e, (F)key.f,
+                        (G)key.g, (H)key.h, (I)key.i);
+            }
+        };
+        final MemoCache<Key9, R> cache = this.<Key9, R> newCache(loader);
+        return registered(new Memoized9<A, B, C, D, E, F, G, H, I, R>(cache) {
+            @Override
+            public R call(A a, B b, C c, D d, E e, F f, G g, H h, I i) {
+                final Key9 probe = cache.hashesKeys() ? Key9.probe(a, b, c, d, e, f, g, h, i)
+                        : Key9.unhashedProbe(a, b, c, d, e, f, g, h, i);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results
+     *
+     * @param funcN function to wrap
+     * @return function caching results
+     */
+    public <R> FuncN<R> memoize(final FuncN<R> funcN) {
+        final Func1<ArgStorage, R> loader = new Func1<ArgStorage, R>() {
+            @Override
+            public R call(ArgStorage args) {
+                return funcN.call(args.storage);
+            }
+        };
+        final MemoCache<ArgStorage, R> cache = this.<ArgStorage, R> newCache(loader);
+        return registered(new MemoizedN<R>(cache) {
+            @Override
+            public R call(Object... objects) {
+                final ArgStorage probe = cache.hashesKeys() ? ArgStorage.probe(objects)
+                        : ArgStorage.unhashedProbe(objects);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func0 function to wrap
+     * @return function sharing and caching results
+     */
+    public <R> Func0<Observable<R>> memoizeObservable(final Func0<Observable<R>> func0) {
+        final MemoCache<Object, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<Object, Observable<R>>() {
+                    @Override
+                    public Observable<R> call(Object key) {
+                        return func0.call();
+                    }
+                });
+        return registered(new Memoized0<Observable<R>>(cache) {
+            @Override
+            public Observable<R> call() {
+                return cache.get(this);
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func1 function to wrap
+     * @return function sharing and caching results
+     */
+    public <A, R> Func1<A, Observable<R>> memoizeObservable(final Func1<A, Observable<R>> func1) {
+        final MemoCache<A, Observable<R>> cache = SharedObservableLoader.newCache(this, func1);
+        return registered(new Memoized1<A, Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(A a) {
+                return cache.get(a);
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func2 function to wrap
+     * @return function sharing and caching results
+     */
+    public <A, B, R> Func2<A, B, Observable<R>> memoizeObservable(
+            final Func2<A, B, Observable<R>> func2) {
+        final MemoCache<Key2, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<Key2, Observable<R>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Observable<R> call(Key2 key) {
+                        return func2.call((A)key.a, (B)key.b);
+                    }
+                });
+        return registered(new Memoized2<A, B, Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(A a, B b) {
+                final Key2 probe = cache.hashesKeys() ? Key2.probe(a, b) : Key2.unhashedProbe(a, b);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func3 function to wrap
+     * @return function sharing and caching results
+     */
+    public <A, B, C, R> Func3<A, B, C, Observable<R>> memoizeObservable(
+            final Func3<A, B, C, Observable<R>> func3) {
+        final MemoCache<Key3, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<Key3, Observable<R>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Observable<R> call(Key3 key) {
+                        return func3.call((A)key.a, (B)key.b,
+                                (C)key.c);
+                    }
+                });
+        return registered(new Memoized3<A, B, C, Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(A a, B b, C c) {
+                final Key3 probe = cache.hashesKeys() ? Key3.probe(a, b, c)
+                        : Key3.unhashedProbe(a, b, c);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func4 function to wrap
+     * @return function sharing and caching results
+     */
+    public <A, B, C, D, R> Func4<A, B, C, D, Observable<R>> memoizeObservable(
+            final Func4<A, B, C, D, Observable<R>> func4) {
+        final MemoCache<Key4, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<Key4, Observable<R>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Observable<R> call(Key4 key) {
+                        return func4.call((A)key.a, (B)key.b,
+                                (C)key.c, (D)key.d);
+                    }
+                });
+        return registered(new Memoized4<A, B, C, D, Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(A a, B b, C c, D d) {
+                final Key4 probe = cache.hashesKeys() ? Key4.probe(a, b, c, d)
+                        : Key4.unhashedProbe(a, b, c, d);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func5 function to wrap
+     * @return function sharing and caching results
+     */
+    public <A, B, C, D, E, R> Func5<A, B, C, D, E, Observable<R>> memoizeObservable(
+            final Func5<A, B, C, D, E, Observable<R>> func5) {
+        final MemoCache<Key5, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<Key5, Observable<R>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Observable<R> call(Key5 key) {
+                        return func5.call((A)key.a, (B)key.b,
+                                (C)key.c, (D)key.d, (E)key.e);
+                    }
+                });
+        return registered(new Memoized5<A, B, C, D, E, Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(A a, B b, C c, D d, E e) {
+                final Key5 probe = cache.hashesKeys() ? Key5.probe(a, b, c, d, e)
+                        : Key5.unhashedProbe(a, b, c, d, e);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func6 function to wrap
+     * @return function sharing and caching results
+     */
+    public <A, B, C, D, E, F, R> Func6<A, B, C, D, E, F, Observable<R>> memoizeObservable(
+            final Func6<A, B, C, D, E, F, Observable<R>> func6) {
+        final MemoCache<Key6, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<Key6, Observable<R>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Observable<R> call(Key6 key) {
+                        return func6.call((A)key.a, (B)key.b,
+                                (C)key.c, (D)key.d, (E)key.e,
+                                (F)key.f);
+                    }
+                });
+        return registered(new Memoized6<A, B, C, D, E, F, Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(A a, B b, C c, D d, E e, F f) {
+                final Key6 probe = cache.hashesKeys() ? Key6.probe(a, b, c, d, e, f)
+                        : Key6.unhashedProbe(a, b, c, d, e, f);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func7 function to wrap
+     * @return function sharing and caching results
+     */
+    public <A, B, C, D, E, F, G, R> Func7<A, B, C, D, E, F, G, Observable<R>> memoizeObservable(
+            final Func7<A, B, C, D, E, F, G, Observable<R>> func7) {
+        final MemoCache<Key7, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<Key7, Observable<R>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Observable<R> call(Key7 key) {
+                        return func7.call((A)key.a, (B)key.b,
+                                (C)key.c, (D)key.d, (E)key.e,
+                                (F)key.f, (G)key.g);
+                    }
+                });
+        return registered(new Memoized7<A, B, C, D, E, F, G, Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(A a, B b, C c, D d, E e, F f, G g) {
+                final Key7 probe = cache.hashesKeys() ? Key7.probe(a, b, c, d, e, f, g)
+                        : Key7.unhashedProbe(a, b, c, d, e, f, g);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func8 function to wrap
+     * @return function sharing and caching results
+     */
+    public <A, B, C, D, E, F, G, H, R> Func8<A, B, C, D, E, F, G, H, Observable<R>>
+            memoizeObservable(final Func8<A, B, C, D, E, F, G, H, Observable<R>> func8) {
+        final MemoCache<Key8, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<Key8, Observable<R>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Observable<R> call(Key8 key) {
+                        return func8.call((A)key.a, (B)key.b,
+                                (C)key.c, (D)key.d, (E)key.e,
+                                (F)key.f, (G)key.g, (H)key.h);
+                    }
+                });
+        return registered(new Memoized8<A, B, C, D, E, F, G, H, Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(A a, B b, C c, D d, E e, F f, G g, H h) {
+                final Key8 probe = cache.hashesKeys() ? Key8.probe(a, b, c, d, e, f, g, h)
+                        : Key8.unhashedProbe(a, b, c, d, e, f, g, h);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func9 function to wrap
+     * @return function sharing and caching results
+     */
+    public <A, B, C, D, E, F, G, H, I, R> Func9<A, B, C, D, E, F, G, H, I, Observable<R>>
+            memoizeObservable(final Func9<A, B, C, D, E, F, G, H, I, Observable<R>> func9) {
+        final MemoCache<Key9, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<Key9, Observable<R>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Observable<R> call(Key9 key) {
+                        return func9.call((A)key.a, (B)key.b,
+                                (C)key.c, (D)key.d, (E)key.e,
+                                (F)key.f, (G)key.g, (H)key.h,
+                                (I)key.i);
+                    }
+                });
+        return registered(new Memoized9<A, B, C, D, E, F, G, H, I, Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(A a, B b, C c, D d, E e, F f, G g, H h, I i) {
+                final Key9 probe = cache.hashesKeys() ? Key9.probe(a, b, c, d, e, f, g, h, i)
+                        : Key9.unhashedProbe(a, b, c, d, e, f, g, h, i);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param funcN function to wrap
+     * @return function sharing and caching results
+     */
+    public <R> FuncN<Observable<R>> memoizeObservable(final FuncN<Observable<R>> funcN) {
+        final MemoCache<ArgStorage, Observable<R>> cache = SharedObservableLoader.newCache(this,
+                new Func1<ArgStorage, Observable<R>>() {
+                    @Override
+                    public Observable<R> call(ArgStorage args) {
+                        return funcN.call(args.storage);
+                    }
+                });
+        return registered(new MemoizedN<Observable<R>>(cache) {
+            @Override
+            public Observable<R> call(Object... objects) {
+                final ArgStorage probe = cache.hashesKeys() ? ArgStorage.probe(objects)
+                        : ArgStorage.unhashedProbe(objects);
+                try {
+                    return cache.get(probe);
+                } finally {
+                    probe.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func0 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <R> Func0<Observable<R>> memoizeAsync(final Func0<R> func0) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func0<Observable<R>>() {
+            @Override
+            public Observable<R> call() {
+                return async(scheduler, func0);
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func1 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <A, R> Func1<A, Observable<R>> memoizeAsync(final Func1<A, R> func1) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func1<A, Observable<R>>() {
+            @Override
+            public Observable<R> call(final A a) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return func1.call(a);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func2 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <A, B, R> Func2<A, B, Observable<R>> memoizeAsync(final Func2<A, B, R> func2) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func2<A, B, Observable<R>>() {
+            @Override
+            public Observable<R> call(final A a, final B b) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return func2.call(a, b);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func3 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <A, B, C, R> Func3<A, B, C, Observable<R>> memoizeAsync(final Func3<A, B, C, R> func3) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func3<A, B, C, Observable<R>>() {
+            @Override
+            public Observable<R> call(final A a, final B b, final C c) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return func3.call(a, b, c);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func4 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <A, B, C, D, R> Func4<A, B, C, D, Observable<R>> memoizeAsync(
+            final Func4<A, B, C, D, R> func4) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func4<A, B, C, D, Observable<R>>() {
+            @Override
+            public Observable<R> call(final A a, final B b, final C c, final D d) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return func4.call(a, b, c, d);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func5 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <A, B, C, D, E, R> Func5<A, B, C, D, E, Observable<R>> memoizeAsync(
+            final Func5<A, B, C, D, E, R> func5) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func5<A, B, C, D, E, Observable<R>>() {
+            @Override
+            public Observable<R> call(final A a, final B b, final C c, final D d, final E e) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return func5.call(a, b, c, d, e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func6 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <A, B, C, D, E, F, R> Func6<A, B, C, D, E, F, Observable<R>> memoizeAsync(
+            final Func6<A, B, C, D, E, F, R> func6) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func6<A, B, C, D, E, F, Observable<R>>() {
+            @Override
+            public Observable<R> call(final A a, final B b, final C c, final D d, final E e,
+                    final F f) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return func6.call(a, b, c, d, e, f);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func7 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <A, B, C, D, E, F, G, R> Func7<A, B, C, D, E, F, G, Observable<R>> memoizeAsync(
+            final Func7<A, B, C, D, E, F, G, R> func7) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func7<A, B, C, D, E, F, G, Observable<R>>() {
+            @Override
+            public Observable<R> call(final A a, final B b, final C c, final D d, final E e,
+                    final F f, final G g) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return func7.call(a, b, c, d, e, f, g);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func8 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <A, B, C, D, E, F, G, H, R> Func8<A, B, C, D, E, F, G, H, Observable<R>> memoizeAsync(
+            final Func8<A, B, C, D, E, F, G, H, R> func8) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func8<A, B, C, D, E, F, G, H, Observable<R>>() {
+            @Override
+            public Observable<R> call(final A a, final B b, final C c, final D d, final E e,
+                    final F f, final G g, final H h) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return func8.call(a, b, c, d, e, f, g, h);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param func9 function to wrap
+     * @return function returning results asynchronously
+     */
+    public <A, B, C, D, E, F, G, H, I, R> Func9<A, B, C, D, E, F, G, H, I, Observable<R>>
+            memoizeAsync(final Func9<A, B, C, D, E, F, G, H, I, R> func9) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new Func9<A, B, C, D, E, F, G, H, I, Observable<R>>() {
+            @Override
+            public Observable<R> call(final A a, final B b, final C c, final D d, final E e,
+                    final F f, final G g, final H h, final I i) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return func9.call(a, b, c, d, e, f, g, h, i);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on the scheduler set with {@link #asyncScheduler(Scheduler)}. There is a single load
+     * in flight for each set of parameters, shared by every subscriber, and it keeps running even
+     * if all of them unsubscribe. Failed results are not cached.
+     *
+     * @param funcN function to wrap
+     * @return function returning results asynchronously
+     */
+    public <R> FuncN<Observable<R>> memoizeAsync(final FuncN<R> funcN) {
+        final Scheduler scheduler = asyncScheduler;
+        return memoizeObservable(new FuncN<Observable<R>>() {
+            @Override
+            public Observable<R> call(final Object... objects) {
+                return async(scheduler, new Func0<R>() {
+                    @Override
+                    public R call() {
+                        return funcN.call(objects);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return a new version of the function that caches results, computing the missing ones in
+     * batches. Calls missing a result within the time window are collected into one call to the
+     * batch function, and wait for it before returning. Stored results are returned right away.
+     *
+     * @param batchFunction function computing the results for a set of parameters, parameters
+     *            missing from the returned map get a null result
+     * @param window time to wait for more parameters after the first miss of a batch
+     * @param unit unit of the window
+     * @param maxBatchSize number of parameters that loads a batch without waiting for the window
+     * @return function caching results
+     * @see #memoizeBatched(Func1, long, TimeUnit, int, Scheduler)
+     */
+    public <A, R> Func1<A, R> memoizeBatched(final Func1<Set<A>, Map<A, R>> batchFunction,
+            long window, TimeUnit unit, int maxBatchSize) {
+        return memoizeBatched(batchFunction, window, unit, maxBatchSize, Schedulers.io());
+    }
+
+    /**
+     * Return a new version of the function that caches results, computing the missing ones in
+     * batches. Calls missing a result within the time window are collected into one call to the
+     * batch function, and wait for it before returning. Stored results are returned right away.
+     *
+     * @param batchFunction function computing the results for a set of parameters, parameters
+     *            missing from the returned map get a null result
+     * @param window time to wait for more parameters after the first miss of a batch
+     * @param unit unit of the window
+     * @param maxBatchSize number of parameters that loads a batch without waiting for the window
+     * @param scheduler scheduler loading the batches once their window ends
+     * @return function caching results
+     */
+    public <A, R> Func1<A, R> memoizeBatched(final Func1<Set<A>, Map<A, R>> batchFunction,
+            long window, TimeUnit unit, int maxBatchSize, Scheduler scheduler) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        if (null == scheduler) {
+            throw new NullPointerException("scheduler");
+        }
+        return memoize(new BatchLoader<A, R>(batchFunction, toNanos("window", window, unit),
+                maxBatchSize, scheduler, newRemoteRegion()));
+    }
+
+    /**
+     * Return a new version of a recursive function that caches results, including the ones of its
+     * recursive calls. The function receives its memoized version as the first parameter, and has
+     * to recurse through it. Recursing with the same parameters throws an
+     * {@link IllegalStateException} instead of waiting forever.
+     *
+     * @param func2 function to wrap, receiving itself memoized and the parameter
+     * @return function caching results
+     */
+    public <A, R> Func1<A, R> memoizeRecursive(final Func2<Func1<A, R>, A, R> func2) {
+        final AtomicReference<Func1<A, R>> self = new AtomicReference<Func1<A, R>>();
+        self.set(memoize(new Func1<A, R>() {
+            @Override
+            public R call(A a) {
+                return func2.call(self.get(), a);
+            }
+        }));
+        return self.get();
+    }
+
+    /**
+     * Return a new version of a recursive function that caches results, including the ones of its
+     * recursive calls. The function receives its memoized version as the first parameter, and has
+     * to recurse through it. Recursing with the same parameters throws an
+     * {@link IllegalStateException} instead of waiting forever.
+     *
+     * @param func3 function to wrap, receiving itself memoized and the parameters
+     * @return function caching results
+     */
+    public <A, B, R> Func2<A, B, R> memoizeRecursive(
+            final Func3<Func2<A, B, R>, A, B, R> func3) {
+        final AtomicReference<Func2<A, B, R>> self = new AtomicReference<Func2<A, B, R>>();
+        self.set(memoize(new Func2<A, B, R>() {
+            @Override
+            public R call(A a, B b) {
+                return func3.call(self.get(), a, b);
+            }
+        }));
+        return self.get();
+    }
+
+    /**
+     * Return a new version of a recursive function that caches results, including the ones of its
+     * recursive calls. The function receives its memoized version as the first parameter, and has
+     * to recurse through it. Recursing with the same parameters throws an
+     * {@link IllegalStateException} instead of waiting forever.
+     *
+     * @param func4 function to wrap, receiving itself memoized and the parameters
+     * @return function caching results
+     */
+    public <A, B, C, R> Func3<A, B, C, R> memoizeRecursive(
+            final Func4<Func3<A, B, C, R>, A, B, C, R> func4) {
+        final AtomicReference<Func3<A, B, C, R>> self =
+                new AtomicReference<Func3<A, B, C, R>>();
+        self.set(memoize(new Func3<A, B, C, R>() {
+            @Override
+            public R call(A a, B b, C c) {
+                return func4.call(self.get(), a, b, c);
+            }
+        }));
+        return self.get();
+    }
+
+    <K, R> MemoCache<K, R> newCache(Func1<? super K, ? extends R> loader) {
+        if (0 != threadLocalSize && (hasReferences() || UNSET != expireAfterWriteNanos
+                || UNSET != expireAfterAccessNanos || UNSET != refreshAfterWriteNanos)) {
+            throw new IllegalStateException("threadLocalCache can't be combined with expiration, "
+                    + "refresh, weakKeys or softValues");
+        }
+        if (null != keyEquivalence && (weakKeys || UNSET != offHeapBytes)) {
+            throw new IllegalStateException("keyEquivalence can't be combined with weakKeys or "
+                    + "offHeap");
+        }
+        if (indexByFirstParameter && hasReferences()) {
+            throw new IllegalStateException("indexByFirstParameter can't be combined with "
+                    + "weakKeys or softValues");
+        }
+        if (null != remoteTier && (weakKeys || null != keyEquivalence
+                || UNSET != expireAfterWriteNanos || UNSET != expireAfterAccessNanos
+                || UNSET != refreshAfterWriteNanos)) {
+            throw new IllegalStateException("remoteTier can't be combined with weakKeys, "
+                    + "keyEquivalence, expiration or refresh");
+        }
+        if (null != pool) {
+            if (hasPolicy() || hasReferences() || UNSET != offHeapBytes) {
+                throw new IllegalStateException("pool can't be combined with maximumSize, "
+                        + "expiration, refresh, weakKeys, softValues or offHeap");
+            }
+            return new PooledMemoCache<K, R>(this, loader, pool);
+        }
+        if (hasReferences()) {
+            if (hasPolicy()) {
+                throw new IllegalStateException("weakKeys and softValues can't be combined with "
+                        + "maximumSize, expiration or refresh");
+            }
+            return new ReferenceMemoCache<K, R>(this, loader);
+        }
+        if (UNSET != offHeapBytes) {
+            if (!isBounded()) {
+                throw new IllegalStateException("offHeap requires a maximumSize");
+            }
+            @SuppressWarnings("unchecked")
+            final Codec<R> resultCodec = (Codec<R>)codec;
+            return new BoundedMemoCache<K, R>(this, loader, new OffHeapStore<K, R>(
+                    (int)offHeapBytes, resultCodec));
+        }
+        if (hasPolicy()) {
+            return new BoundedMemoCache<K, R>(this, loader);
+        }
+        return new UnboundedMemoCache<K, R>(this, loader);
+    }
+
+    StatsCounter newStatsCounter() {
+        return recordStats ? new StatsCounter() : null;
+    }
+
+    <K, R> NearCache<K, R> newNearCache() {
+        return 0 == threadLocalSize ? null : new NearCache<K, R>(threadLocalSize);
+    }
+
+    <K> PrefixIndex<K> newPrefixIndex() {
+        return indexByFirstParameter ? new PrefixIndex<K>() : null;
+    }
+
+    RemoteRegion newRemoteRegion() {
+        return null == remoteTier ? null : new RemoteRegion(remoteTier, remoteRegion);
+    }
+
+    /* Listens to the remote tier only once the function is fully constructed */
+    private static <T extends Memoized> T registered(T memoized) {
+        final MemoCache<?, ?> storage = memoized.storage;
+        if (null != storage && null != storage.remote) {
+            storage.remote.listen(memoized);
+        }
+        return memoized;
+    }
+
+    <K> FailureCache<K> newFailureCache() {
+        return UNSET == failureBackoffNanos ? null : new FailureCache<K>(failureBackoffNanos,
+                maximumFailureBackoffNanos, ticker);
+    }
+
+    boolean hasPolicy() {
+        return isBounded() || UNSET != expireAfterWriteNanos || UNSET != expireAfterAccessNanos
+                || UNSET != refreshAfterWriteNanos;
+    }
+
+    boolean hasReferences() {
+        return weakKeys || softValues;
+    }
+
+    boolean hasWeakKeys() {
+        return weakKeys;
+    }
+
+    boolean hasSoftValues() {
+        return softValues;
+    }
+
+    boolean isBounded() {
+        return UNSET != maximumSize;
+    }
+
+    Equivalence<Object> getKeyEquivalence() {
+        return keyEquivalence;
+    }
+
+    long getMaximumSize() {
+        return maximumSize;
+    }
+
+    EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    AdmissionPolicy getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
+    long getExpireAfterWriteNanos() {
+        return expireAfterWriteNanos;
+    }
+
+    long getExpireAfterAccessNanos() {
+        return expireAfterAccessNanos;
+    }
+
+    long getRefreshAfterWriteNanos() {
+        return refreshAfterWriteNanos;
+    }
+
+    Scheduler getRefreshScheduler() {
+        return refreshScheduler;
+    }
+
+    Ticker getTicker() {
+        return ticker;
+    }
+
+    private static <R> Observable<R> async(Scheduler scheduler, Func0<R> func0) {
+        return Observable.fromCallable(func0).subscribeOn(scheduler);
+    }
+
+    private static long toNanos(String name, long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException(name + " must not be negative: " + duration);
+        }
+        if (null == unit) {
+            throw new NullPointerException("unit");
+        }
+        return unit.toNanos(duration);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+
+/**
+ * Drops stored results of a memoized function so they are computed again on their next call.
+ * Every function returned by {@link RxMemoization} and {@link MemoizationBuilder} implements it.
+ * <p/>
+ * A call already computing an invalidated result still returns it to its callers, but the result
+ * is not kept.
+ *
+ * @author pakoito
+ */
+public interface MemoizationInvalidator {
+    /**
+     * Drops the result stored for the given parameters
+     *
+     * @param parameters parameters of the call, as many as the function takes
+     * @throws IllegalArgumentException if the number of parameters doesn't match the function
+     */
+    void invalidate(Object... parameters);
+
+    /**
+     * Drops every stored result
+     */
+    void invalidateAll();
+
+    /**
+     * Drops the results of every call whose leading parameters are equal to the given ones, such
+     * as everything computed for a tenant passed as the first parameter. Without
+     * {@link MemoizationBuilder#indexByFirstParameter()} the whole storage is scanned.
+     *
+     * @param leadingParameters leading parameters of the calls to drop, at most as many as the
+     *            function takes
+     * @throws IllegalArgumentException if there are more parameters than the function takes
+     */
+    void invalidatePrefix(Object... leadingParameters);
+}
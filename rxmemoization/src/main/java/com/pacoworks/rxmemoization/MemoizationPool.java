@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import rx.functions.Action1;
+
+/**
+ * Budget shared by many memoized functions, registered with
+ * {@link MemoizationBuilder#pool(MemoizationPool)}. Each result is weighed with a {@link Weigher}
+ * when stored, and once the total weight of the results of every function goes over the budget
+ * the least recently used ones are evicted, whatever function they belong to. Functions with more
+ * hits keep more of the budget without having to size each of them.
+ * <p/>
+ * Hits are recorded in a {@link ReadBuffer} and replayed in batches by whichever thread gets the
+ * lock, so reading a result never blocks.
+ *
+ * @author pakoito
+ */
+public final class MemoizationPool {
+    private final long maximumWeight;
+
+    private final Weigher weigher;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final ReadBuffer<Entry> readBuffer = new ReadBuffer<Entry>();
+
+    private final Action1<Entry> onAccess = new Action1<Entry>() {
+        @Override
+        public void call(Entry entry) {
+            if (entry.linked) {
+                moveToLast(entry);
+            }
+        }
+    };
+
+    /* Guarded by evictionLock */
+    private Entry first;
+
+    /* Guarded by evictionLock */
+    private Entry last;
+
+    /* Written while holding evictionLock */
+    private volatile long weight;
+
+    /**
+     * Creates a pool holding at most a number of results
+     *
+     * @param maximumSize maximum number of results of all the functions together
+     */
+    public MemoizationPool(long maximumSize) {
+        this(maximumSize, Weigher.SINGLETON);
+    }
+
+    /**
+     * Creates a pool holding results up to a total weight
+     *
+     * @param maximumWeight maximum weight of the results of all the functions together
+     * @param weigher weight of each result
+     */
+    public MemoizationPool(long maximumWeight, Weigher weigher) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("maximumWeight must not be negative: "
+                    + maximumWeight);
+        }
+        if (null == weigher) {
+            throw new NullPointerException("weigher");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the budget of the pool
+     *
+     * @return maximum weight of all the results together
+     */
+    public long maximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Returns the weight of every result currently in the pool
+     *
+     * @return total weight
+     */
+    public long weight() {
+        return weight;
+    }
+
+    /**
+     * Returns the weight of the results of one function in the pool
+     *
+     * @param memoized function registered in this pool
+     * @return weight of its results
+     * @throws IllegalArgumentException if the function isn't registered in this pool
+     */
+    public long weight(Object memoized) {
+        final MemoCache<?, ?> storage = Memoized.of(memoized).storage;
+        if (!(storage instanceof PooledMemoCache)
+                || ((PooledMemoCache<?, ?>)storage).pool != this) {
+            throw new IllegalArgumentException("Not registered in this pool: " + memoized);
+        }
+        return ((PooledMemoCache<?, ?>)storage).weight;
+    }
+
+    /**
+     * Creates an entry for a result, weighing it
+     *
+     * @param owner storage of the result
+     * @param key stored key
+     * @param value stored result, masked
+     * @return entry not yet counted in the pool
+     */
+    Entry newEntry(PooledMemoCache<?, ?> owner, Object key, Object value) {
+        final int entryWeight = weigher.weigh(MemoCache.unmask(value));
+        if (entryWeight < 0) {
+            throw new IllegalStateException("Negative weight " + entryWeight + " for " + value);
+        }
+        return new Entry(owner, key, value, entryWeight);
+    }
+
+    /**
+     * Records a hit on an entry
+     *
+     * @param entry entry read
+     */
+    void recordAccess(Entry entry) {
+        if (readBuffer.offer(entry) && evictionLock.tryLock()) {
+            try {
+                readBuffer.drainTo(onAccess);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Counts a new entry in the pool, evicting the least recently used ones if over the budget
+     *
+     * @param entry new entry
+     * @param replaced entry it replaced in its storage, or null
+     */
+    void recordWrite(Entry entry, Entry replaced) {
+        evictionLock.lock();
+        try {
+            readBuffer.drainTo(onAccess);
+            if (null != replaced) {
+                discard(replaced);
+            }
+            if (entry.alive) {
+                addLast(entry);
+                entry.owner.weight += entry.weight;
+                weight += entry.weight;
+            }
+            while (weight > maximumWeight) {
+                final Entry victim = first;
+                discard(victim);
+                victim.owner.evicted(victim);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Stops counting an entry removed from its storage
+     *
+     * @param entry removed entry
+     */
+    void recordRemoval(Entry entry) {
+        evictionLock.lock();
+        try {
+            discard(entry);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /* Guarded by evictionLock */
+    private void discard(Entry entry) {
+        entry.alive = false;
+        if (entry.linked) {
+            unlink(entry);
+            entry.owner.weight -= entry.weight;
+            weight -= entry.weight;
+        }
+    }
+
+    /* Guarded by evictionLock */
+    private void addLast(Entry entry) {
+        entry.linked = true;
+        entry.prev = last;
+        entry.next = null;
+        if (null == last) {
+            first = entry;
+        } else {
+            last.next = entry;
+        }
+        last = entry;
+    }
+
+    /* Guarded by evictionLock */
+    private void unlink(Entry entry) {
+        if (null == entry.prev) {
+            first = entry.next;
+        } else {
+            entry.prev.next = entry.next;
+        }
+        if (null == entry.next) {
+            last = entry.prev;
+        } else {
+            entry.next.prev = entry.prev;
+        }
+        entry.linked = false;
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    /* Guarded by evictionLock */
+    private void moveToLast(Entry entry) {
+        if (entry != last) {
+            unlink(entry);
+            addLast(entry);
+        }
+    }
+
+    /**
+     * Result stored in a {@link PooledMemoCache}, linked from least to most recently used across
+     * every storage of the pool.
+     */
+    static final class Entry {
+        final PooledMemoCache<?, ?> owner;
+
+        final Object key;
+
+        final Object value;
+
+        final int weight;
+
+        /* Guarded by evictionLock */
+        boolean alive = true;
+
+        /* Guarded by evictionLock */
+        boolean linked;
+
+        /* Guarded by evictionLock */
+        Entry prev;
+
+        /* Guarded by evictionLock */
+        Entry next;
+
+        Entry(PooledMemoCache<?, ?> owner, Object key, Object value, int weight) {
+            this.owner = owner;
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action2;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+
+/**
+ * Saves the results of a memoized function to a file and loads them into another one, so a new
+ * process can start with the results of the previous one.
+ * <p/>
+ * The file holds the parameters and the result of each call, serialized with the given codecs. It
+ * is read memory-mapped, and its results are decoded in parallel and stored only for parameters
+ * that have no result yet, so the memoized function can be called while it loads.
+ *
+ * @author pakoito
+ */
+public final class MemoizationSnapshot {
+    /* "RMS1" */
+    private static final int MAGIC = 0x524d5331;
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final int CHUNKS_PER_CPU = 4;
+
+    private MemoizationSnapshot() {
+        // No instances
+    }
+
+    /**
+     * Writes every result stored by a memoized function. The stream is flushed but not closed.
+     *
+     * @param memoized function returned by {@link RxMemoization} or {@link MemoizationBuilder}
+     * @param out stream to write to
+     * @param parametersCodec codec for the parameters of each call
+     * @param resultCodec codec for the non-null results
+     * @return number of results written
+     * @throws IOException if the stream can't be written
+     */
+    public static <R> int write(Object memoized, OutputStream out, Codec<Object[]> parametersCodec,
+            Codec<R> resultCodec) throws IOException {
+        final Memoized function = memoizedOf(memoized);
+        final List<Object> entries = new ArrayList<Object>();
+        function.storage.forEach(new Action2<Object, Object>() {
+            @Override
+            public void call(Object key, Object result) {
+                entries.add(key);
+                entries.add(result);
+            }
+        });
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        for (int i = 0; i < entries.size(); i += 2) {
+            writeBytes(data, parametersCodec.encode(function.parameters(entries.get(i))));
+            @SuppressWarnings("unchecked")
+            final R result = (R)MemoCache.unmask(entries.get(i + 1));
+            writeBytes(data, null == result ? null : resultCodec.encode(result));
+        }
+        data.flush();
+        return entries.size() / 2;
+    }
+
+    /**
+     * Loads the results in a file into a memoized function on {@link Schedulers#computation()}
+     *
+     * @param memoized function returned by {@link RxMemoization} or {@link MemoizationBuilder}
+     * @param file file written by {@link #write(Object, OutputStream, Codec, Codec)}
+     * @param parametersCodec codec for the parameters of each call
+     * @param resultCodec codec for the non-null results
+     * @return observable emitting the number of results stored once it's done
+     * @see #restore(Object, File, Codec, Codec, Scheduler)
+     */
+    public static <R> Observable<Integer> restore(Object memoized, File file,
+            Codec<Object[]> parametersCodec, Codec<R> resultCodec) {
+        return restore(memoized, file, parametersCodec, resultCodec, Schedulers.computation());
+    }
+
+    /**
+     * Loads the results in a file into a memoized function. Nothing is read until the returned
+     * {@link Observable} is subscribed to, and then the results are decoded in parallel on the
+     * scheduler. Results are not stored for parameters that already have one.
+     * <p/>
+     * Functions with {@link MemoizationBuilder#weakKeys()} compare their parameters by identity,
+     * so they can't be restored into.
+     *
+     * @param memoized function returned by {@link RxMemoization} or {@link MemoizationBuilder}
+     * @param file file written by {@link #write(Object, OutputStream, Codec, Codec)}
+     * @param parametersCodec codec for the parameters of each call
+     * @param resultCodec codec for the non-null results
+     * @param scheduler scheduler to read and decode on
+     * @return observable emitting the number of results stored once it's done
+     * @throws IllegalArgumentException if the function has weak keys
+     */
+    public static <R> Observable<Integer> restore(Object memoized, final File file,
+            final Codec<Object[]> parametersCodec, final Codec<R> resultCodec,
+            final Scheduler scheduler) {
+        final Memoized function = memoizedOf(memoized);
+        if (function.storage instanceof ReferenceMemoCache
+                && ((ReferenceMemoCache<?, ?>)function.storage).hasWeakKeys()) {
+            throw new IllegalArgumentException("Can't restore into a function with weakKeys, "
+                    + "its keys are compared by identity: " + memoized);
+        }
+        return Observable.defer(new Func0<Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call() {
+                final ByteBuffer buffer;
+                final List<List<Record>> chunks;
+                try {
+                    buffer = map(file);
+                    chunks = split(read(buffer));
+                } catch (IOException e) {
+                    return Observable.error(e);
+                }
+                return Observable.from(chunks).flatMap(
+                        new Func1<List<Record>, Observable<Integer>>() {
+                            @Override
+                            public Observable<Integer> call(final List<Record> chunk) {
+                                return Observable.defer(new Func0<Observable<Integer>>() {
+                                    @Override
+                                    public Observable<Integer> call() {
+                                        return Observable.just(restore(function, buffer, chunk,
+                                                parametersCodec, resultCodec));
+                                    }
+                                }).subscribeOn(scheduler);
+                            }
+                        }).reduce(0, new Func2<Integer, Integer, Integer>() {
+                            @Override
+                            public Integer call(Integer total, Integer restored) {
+                                return total + restored;
+                            }
+                        });
+            }
+        }).subscribeOn(scheduler);
+    }
+
+    private static Memoized memoizedOf(Object memoized) {
+        final Memoized function = Memoized.of(memoized);
+        if (null == function.storage) {
+            throw new IllegalArgumentException("Memoized function without storage: " + memoized);
+        }
+        return function;
+    }
+
+    private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+        if (null == bytes) {
+            data.writeInt(NULL_LENGTH);
+            return;
+        }
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            /* The mapping stays valid after the file is closed */
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    randomAccessFile.length());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static List<Record> read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4 || MAGIC != buffer.getInt()) {
+            throw new IOException("Not a memoization snapshot");
+        }
+        final List<Record> records = new ArrayList<Record>();
+        while (buffer.hasRemaining()) {
+            final Record record = new Record();
+            record.parametersOffset = buffer.position() + 4;
+            record.parametersLength = skip(buffer);
+            record.resultOffset = buffer.position() + 4;
+            record.resultLength = skip(buffer);
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static int skip(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4) {
+            throw new IOException("Truncated memoization snapshot");
+        }
+        final int length = buffer.getInt();
+        if (length > buffer.remaining() || length < NULL_LENGTH) {
+            throw new IOException("Truncated memoization snapshot");
+        }
+        if (length > 0) {
+            buffer.position(buffer.position() + length);
+        }
+        return length;
+    }
+
+    private static List<List<Record>> split(List<Record> records) {
+        final int chunks = Runtime.getRuntime().availableProcessors() * CHUNKS_PER_CPU;
+        final int chunkSize = Math.max(1, (records.size() + chunks - 1) / chunks);
+        final List<List<Record>> split = new ArrayList<List<Record>>();
+        for (int i = 0; i < records.size(); i += chunkSize) {
+            split.add(records.subList(i, Math.min(records.size(), i + chunkSize)));
+        }
+        return split;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> int restore(Memoized function, ByteBuffer buffer, List<Record> chunk,
+            Codec<Object[]> parametersCodec, Codec<R> resultCodec) {
+        final MemoCache<Object, Object> cache = (MemoCache<Object, Object>)function.storage;
+        final ByteBuffer source = buffer.duplicate();
+        int restored = 0;
+        for (Record record : chunk) {
+            final Object[] parameters = parametersCodec.decode(bytes(source,
+                    record.parametersOffset, record.parametersLength));
+            final R result = NULL_LENGTH == record.resultLength ? null : resultCodec
+                    .decode(bytes(source, record.resultOffset, record.resultLength));
+            if (cache.restore(function.key(parameters), result)) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    private static byte[] bytes(ByteBuffer source, int offset, int length) {
+        final byte[] bytes = new byte[Math.max(0, length)];
+        source.position(offset);
+        source.get(bytes);
+        return bytes;
+    }
+
+    private static final class Record {
+        int parametersOffset;
+
+        int parametersLength;
+
+        int resultOffset;
+
+        int resultLength;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+/**
+ * Statistics of a memoized function. Every function returned by {@link RxMemoization} and
+ * {@link MemoizationBuilder} implements it, so it can be cast to check whether memoizing it pays
+ * off.
+ * <p/>
+ * Counters are only recorded for functions memoized with {@link MemoizationBuilder#recordStats()}
+ * and are always zero otherwise. They are updated without locking, so a snapshot taken while the
+ * function is being called may be slightly out of date.
+ *
+ * @author pakoito
+ */
+public interface MemoizationStats {
+    /**
+     * Returns the number of calls answered with a stored result
+     *
+     * @return number of hits
+     */
+    long hitCount();
+
+    /**
+     * Returns the number of calls that found no stored result, including the ones that waited for
+     * a concurrent call with the same parameters
+     *
+     * @return number of misses
+     */
+    long missCount();
+
+    /**
+     * Returns the number of times the wrapped function was called, including failed calls and
+     * background refreshes
+     *
+     * @return number of loads
+     */
+    long loadCount();
+
+    /**
+     * Returns the time spent calling the wrapped function
+     *
+     * @return total load time in nanoseconds
+     */
+    long totalLoadTime();
+
+    /**
+     * Returns the number of results dropped because of the maximum size or expiration
+     *
+     * @return number of evictions
+     */
+    long evictionCount();
+
+    /**
+     * Returns the approximate number of results currently stored
+     *
+     * @return number of stored results
+     */
+    long size();
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * Operators applying a memoized function to every element of an {@link Observable}.
+ * <p/>
+ * Elements with a stored result are emitted right away on the thread emitting them. Missing results
+ * are computed concurrently on a {@link Scheduler}, and the results are emitted in the same order
+ * as the elements. Requests from downstream bound how many elements are taken from upstream.
+ *
+ * @author pakoito
+ */
+public final class MemoizationTransformer {
+    private MemoizationTransformer() {
+        // No instances
+    }
+
+    /**
+     * Maps every element through the memoized function, computing missing results on
+     * {@link Schedulers#computation()} with as many concurrent computations as processors
+     *
+     * @param memoized function returned by {@link RxMemoization} or {@link MemoizationBuilder}
+     * @return transformer emitting the result of each element in order
+     * @see #map(Func1, int, Scheduler)
+     */
+    public static <A, R> Observable.Transformer<A, R> map(Func1<A, R> memoized) {
+        return map(memoized, Runtime.getRuntime().availableProcessors(),
+                Schedulers.computation());
+    }
+
+    /**
+     * Maps every element through the memoized function. Stored results are emitted synchronously,
+     * missing ones are computed on the scheduler, and equal elements waiting for the same result
+     * share a single computation. The output keeps the order of the elements, and fails with the
+     * first error thrown by the function.
+     *
+     * @param memoized function returned by {@link RxMemoization} or {@link MemoizationBuilder}
+     * @param maxConcurrency maximum number of elements being mapped at the same time
+     * @param scheduler scheduler to compute the missing results on
+     * @return transformer emitting the result of each element in order
+     */
+    public static <A, R> Observable.Transformer<A, R> map(final Func1<A, R> memoized,
+            final int maxConcurrency, final Scheduler scheduler) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: "
+                    + maxConcurrency);
+        }
+        if (null == scheduler) {
+            throw new NullPointerException("scheduler");
+        }
+        final Memoized function = Memoized.of(memoized);
+        return new Observable.Transformer<A, R>() {
+            @Override
+            public Observable<R> call(final Observable<A> elements) {
+                return Observable.defer(new Func0<Observable<R>>() {
+                    @Override
+                    public Observable<R> call() {
+                        return elements.concatMapEager(new InOrder<A, R>(memoized, function,
+                                scheduler), maxConcurrency, maxConcurrency);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Mapping of the elements of a single subscription, remembering the results being computed by
+     * the same keys the storage uses
+     */
+    private static final class InOrder<A, R> implements Func1<A, Observable<R>> {
+        private final Func1<A, R> memoized;
+
+        private final Memoized function;
+
+        private final MemoCache<Object, R> storage;
+
+        private final Scheduler scheduler;
+
+        private final ConcurrentHashMap<Object, Observable<R>> inFlight =
+                new ConcurrentHashMap<Object, Observable<R>>();
+
+        @SuppressWarnings("unchecked")
+        InOrder(Func1<A, R> memoized, Memoized function, Scheduler scheduler) {
+            this.memoized = memoized;
+            this.function = function;
+            this.storage = (MemoCache<Object, R>)function.storage;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public Observable<R> call(final A element) {
+            final Object lookupKey = function.key(new Object[] {
+                    element
+            });
+            final R stored = storage.getIfStored(lookupKey);
+            if (null != stored) {
+                return Observable.just(MemoCache.unmask(stored));
+            }
+            final Object key = storage.loadingKey(lookupKey);
+            Observable<R> result = inFlight.get(key);
+            if (null == result) {
+                result = Observable.fromCallable(new Callable<R>() {
+                    @Override
+                    public R call() {
+                        return memoized.call(element);
+                    }
+                }).subscribeOn(scheduler).doOnTerminate(new Action0() {
+                    @Override
+                    public void call() {
+                        /* Later elements find the stored result instead */
+                        inFlight.remove(key);
+                    }
+                }).cache();
+                /* Elements are mapped one at a time, so no other result can be added meanwhile */
+                inFlight.put(key, result);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+
+/**
+ * Fills a memoized function ahead of time with the results for a known set of parameters.
+ * <p/>
+ * Each set of parameters goes through the same storage as a normal call, so results already stored
+ * are not computed again, and a call made while warming up waits for the same computation instead
+ * of starting another one.
+ *
+ * @author pakoito
+ */
+public final class MemoizationWarmUp {
+    private MemoizationWarmUp() {
+        // No instances
+    }
+
+    /**
+     * Computes the results for every set of parameters on {@link Schedulers#computation()}, with as
+     * many concurrent computations as processors
+     *
+     * @param memoized function returned by {@link RxMemoization} or {@link MemoizationBuilder}
+     * @param parameters parameters of each call to warm up
+     * @return observable emitting the number of calls warmed up so far after each one
+     * @see #warmUp(Object, Observable, int, Scheduler)
+     */
+    public static Observable<Integer> warmUp(Object memoized, Iterable<Object[]> parameters) {
+        return warmUp(memoized, Observable.from(parameters));
+    }
+
+    /**
+     * Computes the results for every set of parameters on {@link Schedulers#computation()}, with as
+     * many concurrent computations as processors
+     *
+     * @param memoized function returned by {@link RxMemoization} or {@link MemoizationBuilder}
+     * @param parameters parameters of each call to warm up
+     * @return observable emitting the number of calls warmed up so far after each one
+     * @see #warmUp(Object, Observable, int, Scheduler)
+     */
+    public static Observable<Integer> warmUp(Object memoized, Observable<Object[]> parameters) {
+        return warmUp(memoized, parameters, Runtime.getRuntime().availableProcessors(),
+                Schedulers.computation());
+    }
+
+    /**
+     * Computes the results for every set of parameters. Nothing is computed until the returned
+     * {@link Observable} is subscribed to, and unsubscribing stops the warm-up. It fails with the
+     * first error thrown by the function.
+     * <p/>
+     * Use {@link Schedulers#from(java.util.concurrent.Executor)} to run it on a fork-join pool.
+     *
+     * @param memoized function returned by {@link RxMemoization} or {@link MemoizationBuilder}
+     * @param parameters parameters of each call to warm up
+     * @param maxConcurrency maximum number of results computed at the same time
+     * @param scheduler scheduler to compute the results on
+     * @return observable emitting the number of calls warmed up so far after each one
+     */
+    public static Observable<Integer> warmUp(Object memoized, Observable<Object[]> parameters,
+            int maxConcurrency, final Scheduler scheduler) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: "
+                    + maxConcurrency);
+        }
+        final Memoized function = Memoized.of(memoized);
+        return parameters.flatMap(new Func1<Object[], Observable<Object>>() {
+            @Override
+            public Observable<Object> call(final Object[] call) {
+                return Observable.defer(new Func0<Observable<Object>>() {
+                    @Override
+                    public Observable<Object> call() {
+                        function.load(call);
+                        return Observable.just(null);
+                    }
+                }).subscribeOn(scheduler);
+            }
+        }, maxConcurrency).scan(0, new Func2<Integer, Object, Integer>() {
+            @Override
+            public Integer call(Integer count, Object ignored) {
+                return count + 1;
+            }
+        }).skip(1);
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.Collections;
+
+import com.pacoworks.rxmemoization.ArgKeys.Key2;
+import com.pacoworks.rxmemoization.ArgKeys.Key3;
+import com.pacoworks.rxmemoization.ArgKeys.Key4;
+import com.pacoworks.rxmemoization.ArgKeys.Key5;
+import com.pacoworks.rxmemoization.ArgKeys.Key6;
+import com.pacoworks.rxmemoization.ArgKeys.Key7;
+import com.pacoworks.rxmemoization.ArgKeys.Key8;
+import com.pacoworks.rxmemoization.ArgKeys.Key9;
+
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.functions.Func3;
+import rx.functions.Func4;
+import rx.functions.Func5;
+import rx.functions.Func6;
+import rx.functions.Func7;
+import rx.functions.Func8;
+import rx.functions.Func9;
+import rx.functions.FuncN;
+
+/**
+ * Base of every memoized function, reporting the {@link MemoizationStats} of its storage and
+ * dropping its results through {@link MemoizationInvalidator}.
+ * <p/>
+ * There is one abstract subclass per arity so each memoized function can still be written as an
+ * anonymous class. Each one also knows how to turn the parameters of a call into the key of its
+ * storage and back, so the storage can be saved with {@link MemoizationSnapshot}.
+ *
+ * @author pakoito
+ */
+abstract class Memoized implements MemoizationStats, MemoizationInvalidator {
+    /* Null if the function has no storage */
+    final MemoCache<?, ?> storage;
+
+    /* Null if stats are not recorded */
+    private final StatsCounter stats;
+
+    Memoized(MemoCache<?, ?> cache) {
+        this.storage = cache;
+        this.stats = null == cache ? null : cache.stats;
+    }
+
+    @Override
+    public long hitCount() {
+        return null == stats ? 0 : stats.hitCount();
+    }
+
+    @Override
+    public long missCount() {
+        return null == stats ? 0 : stats.missCount();
+    }
+
+    @Override
+    public long loadCount() {
+        return null == stats ? 0 : stats.loadCount();
+    }
+
+    @Override
+    public long totalLoadTime() {
+        return null == stats ? 0 : stats.totalLoadTime();
+    }
+
+    @Override
+    public long evictionCount() {
+        return null == stats ? 0 : stats.evictionCount();
+    }
+
+    @Override
+    public long size() {
+        return null == storage ? 0 : storage.size();
+    }
+
+    @Override
+    public void invalidate(Object... parameters) {
+        invalidateLocally(parameters);
+        if (null != storage && null != storage.remote) {
+            storage.remote.invalidate(Collections.singletonList(key(parameters)));
+        }
+    }
+
+    /**
+     * Drops the result stored for the parameters on this node only, for invalidations published
+     * by the remote tier
+     *
+     * @param parameters parameters of the call
+     * @throws IllegalArgumentException if the number of parameters doesn't match the function
+     */
+    @SuppressWarnings("unchecked")
+    void invalidateLocally(Object[] parameters) {
+        if (arity() >= 0 && parameters.length != arity()) {
+            throw new IllegalArgumentException("Expected " + arity() + " parameters, got "
+                    + parameters.length);
+        }
+        if (null == storage) {
+            invalidateAll();
+            return;
+        }
+        ((MemoCache<Object, Object>)storage).invalidate(key(parameters));
+    }
+
+    @Override
+    public void invalidateAll() {
+        if (null != storage) {
+            storage.invalidateAll();
+        }
+    }
+
+    @Override
+    public void invalidatePrefix(Object... leadingParameters) {
+        if (arity() >= 0 && leadingParameters.length > arity()) {
+            throw new IllegalArgumentException("Expected at most " + arity()
+                    + " parameters, got " + leadingParameters.length);
+        }
+        if (0 == leadingParameters.length) {
+            invalidateAll();
+        } else if (leadingParameters.length == arity()) {
+            invalidate(leadingParameters);
+        } else {
+            storage.invalidatePrefix(leadingParameters);
+        }
+    }
+
+    /**
+     * Returns the number of parameters of the function
+     *
+     * @return number of parameters, or -1 if it takes any number
+     */
+    abstract int arity();
+
+    /**
+     * Returns the parameters of the call whose result is stored under the key
+     *
+     * @param key stored key
+     * @return parameters of the call
+     */
+    @SuppressWarnings("unchecked")
+    Object[] parameters(Object key) {
+        return ((MemoCache<Object, ?>)storage).parameters(key);
+    }
+
+    /**
+     * Returns the key storing the result of a call
+     *
+     * @param parameters parameters of the call
+     * @return new key that can be stored
+     */
+    abstract Object key(Object[] parameters);
+
+    /**
+     * Returns the result of a call, computing it through the storage if missing
+     *
+     * @param parameters parameters of the call
+     * @return result of the call
+     */
+    @SuppressWarnings("unchecked")
+    Object load(Object[] parameters) {
+        return ((MemoCache<Object, Object>)storage).get(key(parameters));
+    }
+
+    /**
+     * Returns the memoized function behind an object
+     *
+     * @param memoized function returned by {@link RxMemoization} or {@link MemoizationBuilder}
+     * @return the function
+     * @throws IllegalArgumentException if it isn't a memoized function
+     */
+    static Memoized of(Object memoized) {
+        if (!(memoized instanceof Memoized)) {
+            throw new IllegalArgumentException("Not a memoized function: " + memoized);
+        }
+        return (Memoized)memoized;
+    }
+
+    abstract static class Memoized0<R> extends Memoized implements Func0<R> {
+        Memoized0(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 0;
+        }
+
+        @Override
+        Object[] parameters(Object key) {
+            return new Object[0];
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            return this;
+        }
+
+        @Override
+        Object load(Object[] parameters) {
+            return null == storage ? call() : super.load(parameters);
+        }
+    }
+
+    abstract static class Memoized1<A, R> extends Memoized implements Func1<A, R> {
+        Memoized1(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 1;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            return parameters[0];
+        }
+    }
+
+    abstract static class Memoized2<A, B, R> extends Memoized implements Func2<A, B, R> {
+        Memoized2(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 2;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            if (storage.hashesKeys()) {
+                return new Key2().set(parameters[0], parameters[1]);
+            }
+            return new Key2().setUnhashed(parameters[0], parameters[1]);
+        }
+    }
+
+    abstract static class Memoized3<A, B, C, R> extends Memoized implements Func3<A, B, C, R> {
+        Memoized3(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 3;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            if (storage.hashesKeys()) {
+                return new Key3().set(parameters[0], parameters[1], parameters[2]);
+            }
+            return new Key3().setUnhashed(parameters[0], parameters[1], parameters[2]);
+        }
+    }
+
+    abstract static class Memoized4<A, B, C, D, R> extends Memoized
+            implements Func4<A, B, C, D, R> {
+        Memoized4(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 4;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            if (storage.hashesKeys()) {
+                return new Key4().set(parameters[0], parameters[1], parameters[2], parameters[3]);
+            }
+            return new Key4().setUnhashed(parameters[0], parameters[1], parameters[2],
+                    parameters[3]);
+        }
+    }
+
+    abstract static class Memoized5<A, B, C, D, E, R> extends Memoized
+            implements Func5<A, B, C, D, E, R> {
+        Memoized5(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 5;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            if (storage.hashesKeys()) {
+                return new Key5().set(parameters[0], parameters[1], parameters[2], parameters[3],
+                        parameters[4]);
+            }
+            return new Key5().setUnhashed(parameters[0], parameters[1], parameters[2],
+                    parameters[3], parameters[4]);
+        }
+    }
+
+    abstract static class Memoized6<A, B, C, D, E, F, R> extends Memoized
+            implements Func6<A, B, C, D, E, F, R> {
+        Memoized6(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 6;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            if (storage.hashesKeys()) {
+                return new Key6().set(parameters[0], parameters[1], parameters[2], parameters[3],
+                        parameters[4], parameters[5]);
+            }
+            return new Key6().setUnhashed(parameters[0], parameters[1], parameters[2],
+                    parameters[3], parameters[4], parameters[5]);
+        }
+    }
+
+    abstract static class Memoized7<A, B, C, D, E, F, G, R> extends Memoized
+            implements Func7<A, B, C, D, E, F, G, R> {
+        Memoized7(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 7;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            if (storage.hashesKeys()) {
+                return new Key7().set(parameters[0], parameters[1], parameters[2], parameters[3],
+                        parameters[4], parameters[5], parameters[6]);
+            }
+            return new Key7().setUnhashed(parameters[0], parameters[1], parameters[2],
+                    parameters[3], parameters[4], parameters[5], parameters[6]);
+        }
+    }
+
+    abstract static class Memoized8<A, B, C, D, E, F, G, H, R> extends Memoized
+            implements Func8<A, B, C, D, E, F, G, H, R> {
+        Memoized8(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 8;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            if (storage.hashesKeys()) {
+                return new Key8().set(parameters[0], parameters[1], parameters[2], parameters[3],
+                        parameters[4], parameters[5], parameters[6], parameters[7]);
+            }
+            return new Key8().setUnhashed(parameters[0], parameters[1], parameters[2],
+                    parameters[3], parameters[4], parameters[5], parameters[6], parameters[7]);
+        }
+    }
+
+    abstract static class Memoized9<A, B, C, D, E, F, G, H, I, R> extends Memoized
+            implements Func9<A, B, C, D, E, F, G, H, I, R> {
+        Memoized9(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return 9;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            if (storage.hashesKeys()) {
+                return new Key9().set(parameters[0], parameters[1], parameters[2], parameters[3],
+                        parameters[4], parameters[5], parameters[6], parameters[7], parameters[8]);
+            }
+            return new Key9().setUnhashed(parameters[0], parameters[1], parameters[2],
+                    parameters[3], parameters[4], parameters[5], parameters[6], parameters[7],
+                    parameters[8]);
+        }
+    }
+
+    abstract static class MemoizedN<R> extends Memoized implements FuncN<R> {
+        MemoizedN(MemoCache<?, ?> cache) {
+            super(cache);
+        }
+
+        @Override
+        int arity() {
+            return -1;
+        }
+
+        @Override
+        Object key(Object[] parameters) {
+            if (storage.hashesKeys()) {
+                return new ArgStorage(parameters);
+            }
+            return new ArgStorage().setUnhashed(parameters);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+/**
+ * Small direct-mapped table per thread in front of a storage, so the hottest results are found
+ * without touching memory shared with other threads.
+ * <p/>
+ * Each entry remembers the generation of the storage it was read at, and is ignored once the
+ * storage drops or replaces any result. Entries are only overwritten by another key falling in the
+ * same slot, so each thread holds on to a few results until the memoized function is collected.
+ *
+ * @author pakoito
+ */
+final class NearCache<K, R> {
+    private final int mask;
+
+    private final ThreadLocal<Entry[]> tables;
+
+    NearCache(int size) {
+        final int capacity = ceilingPowerOfTwo(size);
+        this.mask = capacity - 1;
+        this.tables = new ThreadLocal<Entry[]>() {
+            @Override
+            protected Entry[] initialValue() {
+                return new Entry[capacity];
+            }
+        };
+    }
+
+    /**
+     * Returns the result read by this thread for the key, if still valid
+     *
+     * @param key key to look up, never null
+     * @param generation current generation of the storage
+     * @return stored result, or null if absent or stale
+     */
+    @SuppressWarnings("unchecked")
+    R get(K key, int generation) {
+        final int hash = key.hashCode();
+        final Entry entry = tables.get()[spread(hash) & mask];
+        if (null != entry && entry.hash == hash && entry.generation == generation
+                && (entry.key == key || entry.key.equals(key))) {
+            return (R)entry.result;
+        }
+        return null;
+    }
+
+    /**
+     * Remembers a result read by this thread from the storage
+     *
+     * @param key stored key, never a {@link ReusableKey} probe
+     * @param result stored result
+     * @param generation generation of the storage read before the result
+     */
+    void put(K key, R result, int generation) {
+        final int hash = key.hashCode();
+        tables.get()[spread(hash) & mask] = new Entry(key, result, hash, generation);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(value - 1));
+    }
+
+    private static final class Entry {
+        final Object key;
+
+        final Object result;
+
+        final int hash;
+
+        final int generation;
+
+        Entry(Object key, Object result, int hash, int generation) {
+            this.key = key;
+            this.result = result;
+            this.hash = hash;
+            this.generation = generation;
+        }
+    }
+}
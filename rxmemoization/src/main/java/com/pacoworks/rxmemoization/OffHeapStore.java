@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import rx.exceptions.Exceptions;
+import rx.functions.Func1;
+import rx.plugins.RxJavaPlugins;
+
+/**
+ * Second storage tier keeping serialized results in a direct {@link ByteBuffer}, outside of the
+ * heap.
+ * <p/>
+ * Results evicted from a {@link BoundedMemoCache} are appended to the buffer as a ring log, and
+ * once it is full the oldest results are overwritten first. Only the index from key to position
+ * lives on the heap. A result found here is removed and handed back to the heap storage, so each
+ * result lives in a single tier.
+ * <p/>
+ * The buffer is allocated on the first demotion. Codec errors are sent to the RxJava error handler:
+ * a result that can't be encoded is dropped, and one that can't be decoded is computed again.
+ *
+ * @author pakoito
+ */
+final class OffHeapStore<K, R> {
+    private final int capacity;
+
+    private final Codec<R> codec;
+
+    /* Guarded by this */
+    private final HashMap<K, Slot<K>> index = new HashMap<K, Slot<K>>();
+
+    /* Guarded by this, from oldest to newest */
+    private final ArrayDeque<Slot<K>> order = new ArrayDeque<Slot<K>>();
+
+    /* Guarded by this */
+    private ByteBuffer buffer;
+
+    /* Guarded by this */
+    private int position;
+
+    /* Guarded by this, changed by every removal so demotions started before it are dropped */
+    private long epoch;
+
+    OffHeapStore(int capacity, Codec<R> codec) {
+        this.capacity = capacity;
+        this.codec = codec;
+    }
+
+    /**
+     * Wraps a loader so it looks for the result in this store before calling the function
+     *
+     * @param loader function computing missing results
+     * @return loader promoting results from this store
+     */
+    Func1<K, R> promoting(Func1<? super K, ? extends R> loader) {
+        return new Promoting<K, R>(this, loader);
+    }
+
+    /**
+     * Returns the current removal epoch, to be passed to {@link #put(Object, Object, long)}
+     *
+     * @return removal epoch
+     */
+    synchronized long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Stores a result evicted from the heap storage, overwriting the oldest ones if it doesn't fit.
+     * Called without holding any lock of the heap storage, as the codec may be slow.
+     *
+     * @param key key of the result
+     * @param result result, or {@link MemoCache#NULL} for a null result
+     * @param evictionEpoch {@link #epoch()} when the result was evicted, so it is dropped if the
+     *            key may have been invalidated since
+     */
+    void put(K key, R result, long evictionEpoch) {
+        final byte[] bytes = MemoCache.NULL == result ? null : encode(result);
+        if (MemoCache.NULL != result && null == bytes) {
+            return;
+        }
+        final int length = null == bytes ? 0 : bytes.length;
+        if (length > capacity) {
+            return;
+        }
+        synchronized (this) {
+            if (evictionEpoch != epoch) {
+                return;
+            }
+            if (null == buffer) {
+                buffer = ByteBuffer.allocateDirect(capacity);
+            }
+            if (position + length > capacity) {
+                /* Everything past the write position is older than what's before it */
+                while (!order.isEmpty() && order.peekFirst().offset >= position) {
+                    discard(order.pollFirst());
+                }
+                position = 0;
+            }
+            Slot<K> oldest;
+            while (null != (oldest = order.peekFirst()) && oldest.offset >= position
+                    && oldest.offset < position + length) {
+                discard(order.pollFirst());
+            }
+            if (null != bytes) {
+                final ByteBuffer target = buffer.duplicate();
+                target.position(position);
+                target.put(bytes);
+            }
+            final Slot<K> slot = new Slot<K>(key, position, null == bytes ? -1 : length);
+            position += length;
+            final Slot<K> old = index.put(key, slot);
+            if (null != old) {
+                old.removed = true;
+            }
+            order.addLast(slot);
+        }
+    }
+
+    /**
+     * Removes a result from this store
+     *
+     * @param key key of the result
+     * @return stored result, {@link MemoCache#NULL} for a null result, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    R take(K key) {
+        final byte[] bytes;
+        synchronized (this) {
+            final Slot<K> slot = index.remove(key);
+            if (null == slot) {
+                return null;
+            }
+            slot.removed = true;
+            if (slot.length < 0) {
+                return (R)MemoCache.NULL;
+            }
+            bytes = new byte[slot.length];
+            final ByteBuffer source = buffer.duplicate();
+            source.position(slot.offset);
+            source.get(bytes);
+        }
+        try {
+            return codec.decode(bytes);
+        } catch (Throwable e) {
+            Exceptions.throwIfFatal(e);
+            RxJavaPlugins.getInstance().getErrorHandler().handleError(e);
+            return null;
+        }
+    }
+
+    /**
+     * Forgets the result of a key, leaving its bytes to be overwritten
+     *
+     * @param key key of the result
+     */
+    synchronized void remove(K key) {
+        epoch++;
+        final Slot<K> slot = index.remove(key);
+        if (null != slot) {
+            slot.removed = true;
+        }
+    }
+
+    /**
+     * Forgets the results of every key matching a predicate
+     *
+     * @param matches predicate on the keys
+     */
+    synchronized void removeIf(Func1<? super K, Boolean> matches) {
+        epoch++;
+        final Iterator<Slot<K>> slots = index.values().iterator();
+        while (slots.hasNext()) {
+            final Slot<K> slot = slots.next();
+            if (matches.call(slot.key)) {
+                slot.removed = true;
+                slots.remove();
+            }
+        }
+    }
+
+    synchronized long size() {
+        return index.size();
+    }
+
+    private byte[] encode(R result) {
+        try {
+            return codec.encode(result);
+        } catch (Throwable e) {
+            Exceptions.throwIfFatal(e);
+            RxJavaPlugins.getInstance().getErrorHandler().handleError(e);
+            return null;
+        }
+    }
+
+    /* Guarded by this */
+    private void discard(Slot<K> slot) {
+        if (!slot.removed) {
+            index.remove(slot.key);
+        }
+    }
+
+    /* Loader looking for the result in the store first, unwrapped by RemoteRegion */
+    static final class Promoting<K, R> implements Func1<K, R> {
+        final OffHeapStore<K, R> store;
+
+        final Func1<? super K, ? extends R> loader;
+
+        Promoting(OffHeapStore<K, R> store, Func1<? super K, ? extends R> loader) {
+            this.store = store;
+            this.loader = loader;
+        }
+
+        @Override
+        public R call(K key) {
+            final R stored = store.take(key);
+            return null != stored ? MemoCache.unmask(stored) : loader.call(key);
+        }
+    }
+
+    private static final class Slot<K> {
+        final K key;
+
+        final int offset;
+
+        /* -1 for a null result */
+        final int length;
+
+        /* Guarded by the store, true once taken or replaced */
+        boolean removed;
+
+        Slot(K key, int offset, int length) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
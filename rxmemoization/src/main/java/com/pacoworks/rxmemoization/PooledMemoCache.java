@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.pacoworks.rxmemoization.MemoizationPool.Entry;
+
+import rx.functions.Action2;
+import rx.functions.Func1;
+
+/**
+ * Storage keeping its results in a {@link MemoizationPool}, which evicts them together with the
+ * results of every other function registered in it.
+ * <p/>
+ * Results stay counted in the pool until evicted or invalidated, even if the memoized function
+ * is no longer used.
+ *
+ * @author pakoito
+ */
+final class PooledMemoCache<K, R> extends MemoCache<K, R> {
+    final MemoizationPool pool;
+
+    private final ConcurrentHashMap<K, Entry> data = new ConcurrentHashMap<K, Entry>();
+
+    /* Written while holding the eviction lock of the pool */
+    volatile long weight;
+
+    PooledMemoCache(MemoizationBuilder builder, Func1<? super K, ? extends R> loader,
+            MemoizationPool pool) {
+        super(loader, builder);
+        this.pool = pool;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    R getIfPresent(K key) {
+        final Entry entry = data.get(key);
+        if (null == entry) {
+            return null;
+        }
+        pool.recordAccess(entry);
+        return (R)entry.value;
+    }
+
+    @Override
+    boolean isStored(K key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    void put(K key, R result) {
+        final Entry entry = pool.newEntry(this, key, result);
+        final Entry replaced = data.put(key, entry);
+        if (null != replaced) {
+            replaced();
+        }
+        pool.recordWrite(entry, replaced);
+    }
+
+    @Override
+    boolean putIfAbsent(K key, R result) {
+        final Entry entry = pool.newEntry(this, key, result);
+        if (null != data.putIfAbsent(key, entry)) {
+            return false;
+        }
+        pool.recordWrite(entry, null);
+        return true;
+    }
+
+    @Override
+    void remove(K key, R result) {
+        final Entry entry = data.get(key);
+        if (null != entry && entry.value == result && data.remove(key, entry)) {
+            pool.recordRemoval(entry);
+            removed(key);
+        }
+    }
+
+    @Override
+    long size() {
+        return data.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void forEach(Action2<? super K, ? super R> action) {
+        for (Map.Entry<K, Entry> entry : data.entrySet()) {
+            action.call(entry.getKey(), (R)entry.getValue().value);
+        }
+    }
+
+    /**
+     * Drops a result evicted by the pool. Called while holding its eviction lock.
+     *
+     * @param entry evicted entry
+     */
+    @SuppressWarnings("unchecked")
+    void evicted(Entry entry) {
+        if (data.remove(entry.key, entry)) {
+            removed((K)entry.key);
+            if (null != stats) {
+                stats.recordEviction();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the stored keys with several parameters by their first parameter, so the results for
+ * a parameter can be found without scanning the whole storage.
+ * <p/>
+ * Keys are added after their result is stored, and only removed while no result is stored for
+ * them, so a stored result is always indexed even if an older result of the same key is dropped
+ * concurrently. Keys without parameters are never indexed. Each set is guarded by itself, and is
+ * removed from the index once empty so it is never written again.
+ *
+ * @author pakoito
+ */
+final class PrefixIndex<K> {
+    private final ConcurrentHashMap<Object, Set<K>> keys = new ConcurrentHashMap<Object, Set<K>>();
+
+    /**
+     * Indexes a key just stored
+     *
+     * @param key stored key, never a {@link ReusableKey} probe
+     */
+    void add(K key) {
+        final Object first = first(key);
+        if (null == first) {
+            return;
+        }
+        while (true) {
+            Set<K> set = keys.get(first);
+            if (null == set) {
+                final Set<K> created = new HashSet<K>();
+                set = keys.putIfAbsent(first, created);
+                if (null == set) {
+                    set = created;
+                }
+            }
+            synchronized (set) {
+                /* Removed sets are never used again */
+                if (keys.get(first) == set) {
+                    set.add(key);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets a key whose result was dropped, unless a newer result is already stored for it
+     *
+     * @param key stored key
+     * @param storage storage of the key
+     */
+    void remove(K key, MemoCache<K, ?> storage) {
+        final Object first = first(key);
+        if (null == first) {
+            return;
+        }
+        final Set<K> set = keys.get(first);
+        if (null == set) {
+            return;
+        }
+        synchronized (set) {
+            if (!storage.isStored(key) && set.remove(key) && set.isEmpty()) {
+                keys.remove(first, set);
+            }
+        }
+    }
+
+    /**
+     * Returns the indexed keys whose first parameter is the given one
+     *
+     * @param first first parameter, may be null
+     * @return copy of the keys, empty if there are none
+     */
+    List<K> get(Object first) {
+        final Set<K> set = keys.get(MemoCache.mask(first));
+        if (null == set) {
+            return Collections.emptyList();
+        }
+        synchronized (set) {
+            return new ArrayList<K>(set);
+        }
+    }
+
+    /* Null if the key isn't indexed */
+    private static Object first(Object key) {
+        if (!(key instanceof ReusableKey) || 0 == ((ReusableKey)key).arity()) {
+            return null;
+        }
+        return MemoCache.mask(((ReusableKey)key).arg(0));
+    }
+}
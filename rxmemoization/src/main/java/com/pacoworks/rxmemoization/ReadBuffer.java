@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import rx.functions.Action1;
+
+/**
+ * Striped, lossy buffer recording cache hits so they can be replayed in batches by the thread
+ * holding the eviction lock.
+ * <p/>
+ * Each thread writes into the stripe picked by its id. When a stripe is full or contended the hit
+ * is dropped instead of blocking the reader, as losing a few recency updates is harmless.
+ *
+ * @author pakoito
+ */
+final class ReadBuffer<E> {
+    static final int STRIPES = ceilingPowerOfTwo(
+            Runtime.getRuntime().availableProcessors());
+
+    private static final int SIZE = 16;
+
+    private static final int MASK = SIZE - 1;
+
+    private static final int DRAIN_THRESHOLD = SIZE / 2;
+
+    /* Counters for each stripe are 16 longs apart to keep them in different cache lines */
+    static final int PADDING = 16;
+
+    private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<E>(STRIPES * SIZE);
+
+    private final AtomicLongArray writes = new AtomicLongArray(STRIPES * PADDING);
+
+    private final AtomicLongArray reads = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Records an element, dropping it if the stripe is full or contended
+     *
+     * @param element element to record
+     * @return true if the buffer should be drained
+     */
+    boolean offer(E element) {
+        final int stripe = (int)Thread.currentThread().getId() & (STRIPES - 1);
+        final int counter = stripe * PADDING;
+        final long tail = writes.get(counter);
+        final long size = tail - reads.get(counter);
+        if (size >= SIZE) {
+            return true;
+        }
+        if (writes.compareAndSet(counter, tail, tail + 1)) {
+            buffer.lazySet(stripe * SIZE + (int)(tail & MASK), element);
+            return size + 1 >= DRAIN_THRESHOLD;
+        }
+        return false;
+    }
+
+    /**
+     * Replays all the recorded elements. Must be called by a single thread at a time.
+     *
+     * @param consumer action applied to each element
+     */
+    void drainTo(Action1<? super E> consumer) {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final int counter = stripe * PADDING;
+            final long tail = writes.get(counter);
+            long head = reads.get(counter);
+            for (; head < tail; head++) {
+                final int index = stripe * SIZE + (int)(head & MASK);
+                final E element = buffer.get(index);
+                if (null == element) {
+                    /* Slot claimed but not yet published, pick it up on the next drain */
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.call(element);
+            }
+            reads.lazySet(counter, head);
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(value - 1));
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.functions.Action2;
+import rx.functions.Func1;
+
+/**
+ * Storage holding its parameters through weak references and/or its results through soft
+ * references, so the garbage collector can reclaim them.
+ * <p/>
+ * With weak keys every parameter is weakly referenced and compared by identity, and a result is
+ * dropped as soon as any of its parameters is collected. With soft values results are only
+ * collected when the heap runs low. Either way the collected references are enqueued in a
+ * {@link ReferenceQueue} that is polled on every read and write to remove their results.
+ *
+ * @author pakoito
+ */
+final class ReferenceMemoCache<K, R> extends MemoCache<K, R> {
+    private final ConcurrentHashMap<Object, Object> data = new ConcurrentHashMap<Object, Object>();
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    private final boolean weakKeys;
+
+    private final boolean softValues;
+
+    ReferenceMemoCache(MemoizationBuilder builder, Func1<? super K, ? extends R> loader) {
+        super(loader, builder);
+        this.weakKeys = builder.hasWeakKeys();
+        this.softValues = builder.hasSoftValues();
+    }
+
+    @Override
+    R getIfPresent(K key) {
+        purge();
+        return valueOf(lookup(key));
+    }
+
+    @Override
+    void put(K key, R result) {
+        purge();
+        final Object storedKey = weakKeys ? new WeakKey(key, queue) : key;
+        data.put(storedKey, softValues ? new SoftValue<R>(storedKey, result, queue) : result);
+    }
+
+    @Override
+    boolean putIfAbsent(K key, R result) {
+        purge();
+        final Object storedKey = weakKeys ? new WeakKey(key, queue) : key;
+        final Object stored = softValues ? new SoftValue<R>(storedKey, result, queue) : result;
+        while (true) {
+            final Object old = data.putIfAbsent(storedKey, stored);
+            if (null == old) {
+                return true;
+            }
+            if (null != valueOf(old)) {
+                return false;
+            }
+            /* Cleared soft values not purged yet count as absent */
+            if (data.replace(storedKey, old, stored)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns whether keys are compared by identity and only weakly referenced
+     *
+     * @return true with {@link MemoizationBuilder#weakKeys()}
+     */
+    boolean hasWeakKeys() {
+        return weakKeys;
+    }
+
+    @Override
+    void remove(K key, R result) {
+        purge();
+        if (!weakKeys) {
+            final Object stored = data.get(key);
+            if (null != stored && valueOf(stored) == result) {
+                data.remove(key, stored);
+            }
+            return;
+        }
+        final IdentityProbe probe = IdentityProbe.probe(key);
+        try {
+            final Object stored = data.get(probe);
+            if (null != stored && valueOf(stored) == result) {
+                data.remove(probe, stored);
+            }
+        } finally {
+            probe.clear();
+        }
+    }
+
+    @Override
+    long size() {
+        purge();
+        return data.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void forEach(Action2<? super K, ? super R> action) {
+        purge();
+        for (Map.Entry<Object, Object> entry : data.entrySet()) {
+            final R result = valueOf(entry.getValue());
+            if (!(entry.getKey() instanceof WeakKey)) {
+                if (null != result) {
+                    action.call((K)entry.getKey(), result);
+                }
+                continue;
+            }
+            final WeakKey key = (WeakKey)entry.getKey();
+            final Object[] args = new Object[key.arity()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = key.arg(i);
+            }
+            if (null != result && !key.isCleared()) {
+                action.call((K)(args.length == 1 ? args[0] : new ArgStorage(args)), result);
+            }
+        }
+    }
+
+    private Object lookup(K key) {
+        if (!weakKeys) {
+            return data.get(key);
+        }
+        final IdentityProbe probe = IdentityProbe.probe(key);
+        try {
+            return data.get(probe);
+        } finally {
+            probe.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private R valueOf(Object stored) {
+        if (stored instanceof SoftValue) {
+            return ((SoftValue<R>)stored).get();
+        }
+        return (R)stored;
+    }
+
+    private void purge() {
+        Reference<?> reference;
+        while (null != (reference = queue.poll())) {
+            final boolean removed;
+            if (reference instanceof ArgReference) {
+                removed = null != data.remove(((ArgReference)reference).owner);
+            } else {
+                removed = data.remove(((SoftValue<?>)reference).key, reference);
+            }
+            if (removed && null != stats) {
+                stats.recordEviction();
+            }
+        }
+    }
+
+    private static int arity(Object key) {
+        return key instanceof ReusableKey ? ((ReusableKey)key).arity() : 1;
+    }
+
+    private static Object arg(Object key, int index) {
+        return key instanceof ReusableKey ? ((ReusableKey)key).arg(index) : key;
+    }
+
+    private static int identityHash(Object key) {
+        int hash = 1;
+        for (int i = 0; i < arity(key); i++) {
+            hash = 31 * hash + System.identityHashCode(arg(key, i));
+        }
+        return hash;
+    }
+
+    /**
+     * Key comparing each parameter by identity.
+     */
+    private abstract static class IdentityKey {
+        int hashCode;
+
+        abstract int arity();
+
+        abstract Object arg(int index);
+
+        abstract boolean isCleared();
+
+        @Override
+        public final boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof IdentityKey))
+                return false;
+            IdentityKey that = (IdentityKey)o;
+            if (hashCode != that.hashCode || arity() != that.arity() || isCleared()
+                    || that.isCleared()) {
+                return false;
+            }
+            for (int i = 0; i < arity(); i++) {
+                if (arg(i) != that.arg(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public final int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Stored key holding each parameter through a weak reference.
+     */
+    private static final class WeakKey extends IdentityKey {
+        private final ArgReference[] args;
+
+        WeakKey(Object key, ReferenceQueue<Object> queue) {
+            args = new ArgReference[ReferenceMemoCache.arity(key)];
+            for (int i = 0; i < args.length; i++) {
+                final Object arg = ReferenceMemoCache.arg(key, i);
+                args[i] = null == arg ? null : new ArgReference(arg, this, queue);
+            }
+            hashCode = identityHash(key);
+        }
+
+        @Override
+        int arity() {
+            return args.length;
+        }
+
+        @Override
+        Object arg(int index) {
+            return null == args[index] ? null : args[index].get();
+        }
+
+        @Override
+        boolean isCleared() {
+            for (ArgReference arg : args) {
+                if (null != arg && null == arg.get()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Lookup key wrapping the parameters of a call, reused between lookups from the same thread.
+     */
+    private static final class IdentityProbe extends IdentityKey {
+        private static final ThreadLocal<IdentityProbe> PROBE = new ThreadLocal<IdentityProbe>() {
+            @Override
+            protected IdentityProbe initialValue() {
+                return new IdentityProbe();
+            }
+        };
+
+        private Object key;
+
+        static IdentityProbe probe(Object key) {
+            final IdentityProbe probe = PROBE.get();
+            probe.key = key;
+            probe.hashCode = identityHash(key);
+            return probe;
+        }
+
+        void clear() {
+            key = null;
+        }
+
+        @Override
+        int arity() {
+            return ReferenceMemoCache.arity(key);
+        }
+
+        @Override
+        Object arg(int index) {
+            return ReferenceMemoCache.arg(key, index);
+        }
+
+        @Override
+        boolean isCleared() {
+            return false;
+        }
+    }
+
+    private static final class ArgReference extends WeakReference<Object> {
+        final WeakKey owner;
+
+        ArgReference(Object referent, WeakKey owner, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.owner = owner;
+        }
+    }
+
+    private static final class SoftValue<R> extends SoftReference<R> {
+        final Object key;
+
+        SoftValue(Object key, R referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action1;
+import rx.functions.Actions;
+import rx.functions.Func1;
+import rx.plugins.RxJavaPlugins;
+
+/**
+ * Region of a {@link RemoteTier} backing the storage of a memoized function.
+ * <p/>
+ * Local misses are looked up in the tier before calling the function, and new results are written
+ * to it without waiting. Failures of the tier are reported to the RxJava error handler and treated
+ * as misses, so an unavailable tier only costs the local computation.
+ *
+ * @author pakoito
+ */
+final class RemoteRegion {
+    private static final Action1<Throwable> REPORT = new Action1<Throwable>() {
+        @Override
+        public void call(Throwable throwable) {
+            RxJavaPlugins.getInstance().getErrorHandler().handleError(throwable);
+        }
+    };
+
+    private final RemoteTier tier;
+
+    private final String name;
+
+    RemoteRegion(RemoteTier tier, String name) {
+        this.tier = tier;
+        this.name = name;
+    }
+
+    /**
+     * Returns a loader looking up each key in the tier before calling the given one
+     *
+     * @param loader loader of the storage
+     * @return loader going through the tier
+     */
+    <K, R> Func1<? super K, ? extends R> loading(final Func1<? super K, ? extends R> loader) {
+        if (loader instanceof BatchLoader) {
+            /* Batches look up all their keys at once */
+            return loader;
+        }
+        if (loader instanceof OffHeapStore.Promoting) {
+            /* The off-heap tier is local, so it is looked up before the network */
+            @SuppressWarnings("unchecked")
+            final OffHeapStore.Promoting<K, R> promoting = (OffHeapStore.Promoting<K, R>)loader;
+            return promoting.store.promoting(this.<K, R> loading(promoting.loader));
+        }
+        if (loader instanceof SharedObservableLoader) {
+            throw new IllegalStateException("remoteTier can't be combined with "
+                    + "memoizeObservable or memoizeAsync");
+        }
+        return new Func1<K, R>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public R call(K key) {
+                final List<Object> parameters = parameters(key);
+                final Object stored = get(parameters);
+                if (null != stored) {
+                    return (R)stored;
+                }
+                final R result = loader.call(key);
+                if (null != result) {
+                    tier.put(name, parameters, result).subscribe(Actions.empty(), REPORT);
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Returns the results of a batch, only calling the batch function for the keys missing from
+     * the tier
+     *
+     * @param keys keys of the batch
+     * @param batchFunction function loading several keys at once
+     * @return results found or loaded
+     */
+    @SuppressWarnings("unchecked")
+    <A, R> Map<A, R> loadAll(Set<A> keys, Func1<Set<A>, Map<A, R>> batchFunction) {
+        final Map<List<Object>, A> calls = new HashMap<List<Object>, A>();
+        for (A key : keys) {
+            calls.put(Collections.<Object> singletonList(key), key);
+        }
+        final Map<A, R> results = new HashMap<A, R>();
+        for (Map.Entry<List<Object>, Object> entry : getAll(calls.keySet()).entrySet()) {
+            if (calls.containsKey(entry.getKey()) && null != entry.getValue()) {
+                results.put(calls.get(entry.getKey()), (R)entry.getValue());
+            }
+        }
+        final Set<A> missing = new HashSet<A>(keys);
+        missing.removeAll(results.keySet());
+        if (missing.isEmpty()) {
+            return results;
+        }
+        final Map<A, R> loaded = batchFunction.call(Collections.unmodifiableSet(missing));
+        if (null == loaded) {
+            return results;
+        }
+        final Map<List<Object>, Object> computed = new HashMap<List<Object>, Object>();
+        for (A key : missing) {
+            final R result = loaded.get(key);
+            if (null != result) {
+                results.put(key, result);
+                computed.put(Collections.<Object> singletonList(key), result);
+            }
+        }
+        if (!computed.isEmpty()) {
+            tier.putAll(name, computed).subscribe(Actions.empty(), REPORT);
+        }
+        return results;
+    }
+
+    /**
+     * Drops the local results of a function whenever they are invalidated in the tier. Only keeps
+     * a weak reference to the function, and stops listening once it is garbage collected.
+     *
+     * @param memoized function backed by this region
+     */
+    void listen(Memoized memoized) {
+        final WeakReference<Memoized> reference = new WeakReference<Memoized>(memoized);
+        tier.invalidations(name).subscribe(new Subscriber<List<Object>>() {
+            @Override
+            public void onNext(List<Object> parameters) {
+                final Memoized function = reference.get();
+                if (null == function) {
+                    unsubscribe();
+                    return;
+                }
+                try {
+                    function.invalidateLocally(parameters.toArray());
+                } catch (IllegalArgumentException e) {
+                    REPORT.call(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                REPORT.call(e);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+    }
+
+    /**
+     * Removes the results of the keys from the tier, waiting until every node is told to drop
+     * them so the next local miss calls the function again
+     *
+     * @param keys keys as passed to the loader
+     */
+    void invalidate(Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        final List<Observable<Void>> invalidations = new ArrayList<Observable<Void>>(keys.size());
+        for (Object key : keys) {
+            invalidations.add(tier.invalidate(name, parameters(key)));
+        }
+        try {
+            Observable.merge(invalidations).toBlocking().lastOrDefault(null);
+        } catch (RuntimeException e) {
+            REPORT.call(e);
+        }
+    }
+
+    private Object get(List<Object> parameters) {
+        try {
+            return tier.get(name, parameters).toBlocking().firstOrDefault(null);
+        } catch (RuntimeException e) {
+            REPORT.call(e);
+            return null;
+        }
+    }
+
+    private Map<List<Object>, Object> getAll(Set<List<Object>> parameters) {
+        try {
+            final Map<List<Object>, Object> found = tier.getAll(name,
+                    new ArrayList<List<Object>>(parameters)).toBlocking().firstOrDefault(null);
+            return null == found ? Collections.<List<Object>, Object> emptyMap() : found;
+        } catch (RuntimeException e) {
+            REPORT.call(e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private static List<Object> parameters(Object key) {
+        if (key instanceof Memoized) {
+            /* Functions without parameters are their own key */
+            return Collections.emptyList();
+        }
+        if (!(key instanceof ReusableKey)) {
+            return Collections.singletonList(key);
+        }
+        final ReusableKey reusableKey = (ReusableKey)key;
+        final Object[] parameters = new Object[reusableKey.arity()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = reusableKey.arg(i);
+        }
+        return Arrays.asList(parameters);
+    }
+}
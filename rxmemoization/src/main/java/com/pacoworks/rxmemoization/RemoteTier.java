@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import rx.Observable;
+
+/**
+ * Storage shared by every node running the same memoized functions, looked up on a local miss
+ * before calling the function. Results are grouped by region, one per function, and identified by
+ * the list of parameters of the call. Null results are never stored in it.
+ * <p/>
+ * Every operation is asynchronous and only starts when the returned {@link Observable} is
+ * subscribed to. Reads happen while the local storage is loading the key, so each key is only
+ * looked up once per node at a time; writes are not waited for.
+ *
+ * @author pakoito
+ * @see MemoizationBuilder#remoteTier(RemoteTier, String)
+ * @see LoopbackRemoteTier
+ */
+public interface RemoteTier {
+    /**
+     * Looks up a result
+     *
+     * @param region name of the function
+     * @param parameters parameters of the call
+     * @return observable emitting the result, or completing without it if missing
+     */
+    Observable<Object> get(String region, List<Object> parameters);
+
+    /**
+     * Looks up several results at once
+     *
+     * @param region name of the function
+     * @param parameters parameters of each call
+     * @return observable emitting a map with the results found
+     */
+    Observable<Map<List<Object>, Object>> getAll(String region,
+            Collection<List<Object>> parameters);
+
+    /**
+     * Stores a result
+     *
+     * @param region name of the function
+     * @param parameters parameters of the call
+     * @param result result of the call, never null
+     * @return observable completing once stored
+     */
+    Observable<Void> put(String region, List<Object> parameters, Object result);
+
+    /**
+     * Stores several results at once
+     *
+     * @param region name of the function
+     * @param results result of each call, by parameters
+     * @return observable completing once stored
+     */
+    Observable<Void> putAll(String region, Map<List<Object>, Object> results);
+
+    /**
+     * Removes a result and tells every node to drop its local copy
+     *
+     * @param region name of the function
+     * @param parameters parameters of the call
+     * @return observable completing once published
+     */
+    Observable<Void> invalidate(String region, List<Object> parameters);
+
+    /**
+     * Returns the invalidations published by any node, including this one
+     *
+     * @param region name of the function
+     * @return hot observable emitting the parameters of each invalidated call
+     */
+    Observable<List<Object>> invalidations(String region);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+/**
+ * Cache key that is reused between lookups from the same thread, and must be copied before being
+ * stored.
+ *
+ * @author pakoito
+ */
+interface ReusableKey {
+    /**
+     * Returns a new key equal to this one that can be stored
+     *
+     * @return copy of the key
+     */
+    Object copy();
+
+    /**
+     * Drops the references to the parameters once the lookup is done
+     */
+    void clear();
+
+    /**
+     * Returns the number of parameters in the key
+     *
+     * @return number of parameters
+     */
+    int arity();
+
+    /**
+     * Returns a parameter of the key
+     *
+     * @param index position of the parameter
+     * @return parameter at the position
+     */
+    Object arg(int index);
+}
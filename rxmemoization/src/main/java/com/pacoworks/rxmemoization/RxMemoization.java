@@ -16,10 +16,14 @@
 
 package com.pacoworks.rxmemoization;
 
-import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import com.pacoworks.rxmemoization.Memoized.Memoized1;
+import com.pacoworks.rxmemoization.Memoized.Memoized2;
+
+import rx.Observable;
 import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
@@ -36,15 +40,56 @@ import rx.functions.FuncN;
  * Helper class to memoize Functions to enable caching of results for same parameters.
  * <p/>
  * Every function wrapped adds a map check + one if branch for cache hit; or map check + if branch +
- * store value for a cache miss.
+ * store value for a cache miss. Concurrent misses for the same parameters wait for the first one to
+ * finish, so the function is called only once per set of parameters.
  *
  * @author pakoito
  */
 public final class RxMemoization {
+    /* Largest array most VMs can allocate, some reserve header words in it */
+    private static final int MAXIMUM_DENSE_RANGE = Integer.MAX_VALUE - 8;
+
+    private static final Func1<Long, Object[]> INT_PARAMETERS = new Func1<Long, Object[]>() {
+        @Override
+        public Object[] call(Long key) {
+            return new Object[] {
+                    (int)key.longValue()
+            };
+        }
+    };
+
+    private static final Func1<Long, Object[]> INT_PAIR_PARAMETERS =
+            new Func1<Long, Object[]>() {
+                @Override
+                public Object[] call(Long key) {
+                    return new Object[] {
+                            (int)(key >>> 32), (int)key.longValue()
+                    };
+                }
+            };
+
+    private static final Func1<Long, Object[]> DOUBLE_PARAMETERS = new Func1<Long, Object[]>() {
+        @Override
+        public Object[] call(Long key) {
+            return new Object[] {
+                    Double.longBitsToDouble(key)
+            };
+        }
+    };
+
     private RxMemoization() {
         // No instances
     }
 
+    /**
+     * Return a builder to configure how the memoized functions store their results
+     *
+     * @return new builder
+     */
+    public static MemoizationBuilder builder() {
+        return new MemoizationBuilder();
+    }
+
     /**
      * Return a new version of the function that caches results
      * 
@@ -52,21 +97,7 @@ public final class RxMemoization {
      * @return function caching results
      */
     public static <R> Func0<R> memoize(final Func0<R> func0) {
-        return new Func0<R>() {
-            private R value;
-
-            @Override
-            public R call() {
-                if (null == value) {
-                    synchronized (this) {
-                        if (null == value) {
-                            value = func0.call();
-                        }
-                    }
-                }
-                return value;
-            }
-        };
+        return builder().memoize(func0);
     }
 
     /**
@@ -76,20 +107,7 @@ public final class RxMemoization {
      * @return function caching results
      */
     public static <A, R> Func1<A, R> memoize(final Func1<A, R> func1) {
-        final Map<A, R> results = new ConcurrentHashMap<A, R>();
-        return new Func1<A, R>() {
-            @Override
-            public R call(A a) {
-                final R cached = results.get(a);
-                if (null == cached) {
-                    final R result = func1.call(a);
-                    results.put(a, result);
-                    return result;
-                } else {
-                    return cached;
-                }
-            }
-        };
+        return builder().memoize(func1);
     }
 
     /**
@@ -99,21 +117,7 @@ public final class RxMemoization {
      * @return function caching results
      */
     public static <A, B, R> Func2<A, B, R> memoize(final Func2<A, B, R> func2) {
-        final Map<ArgStorage, R> results = new ConcurrentHashMap<ArgStorage, R>();
-        return new Func2<A, B, R>() {
-            @Override
-            public R call(A a, B b) {
-                final ArgStorage args = new ArgStorage(a, b);
-                final R cached = results.get(args);
-                if (null == cached) {
-                    final R result = func2.call(a, b);
-                    results.put(args, result);
-                    return result;
-                } else {
-                    return cached;
-                }
-            }
-        };
+        return builder().memoize(func2);
     }
 
     /**
@@ -123,21 +127,7 @@ public final class RxMemoization {
      * @return function caching results
      */
     public static <A, B, C, R> Func3<A, B, C, R> memoize(final Func3<A, B, C, R> func3) {
-        final Map<ArgStorage, R> results = new ConcurrentHashMap<ArgStorage, R>();
-        return new Func3<A, B, C, R>() {
-            @Override
-            public R call(A a, B b, C c) {
-                final ArgStorage args = new ArgStorage(a, b, c);
-                final R cached = results.get(args);
-                if (null == cached) {
-                    final R result = func3.call(a, b, c);
-                    results.put(args, result);
-                    return result;
-                } else {
-                    return cached;
-                }
-            }
-        };
+        return builder().memoize(func3);
     }
 
     /**
@@ -147,21 +137,7 @@ public final class RxMemoization {
      * @return function caching results
      */
     public static <A, B, C, D, R> Func4<A, B, C, D, R> memoize(final Func4<A, B, C, D, R> func4) {
-        final Map<ArgStorage, R> results = new ConcurrentHashMap<ArgStorage, R>();
-        return new Func4<A, B, C, D, R>() {
-            @Override
-            public R call(A a, B b, C c, D d) {
-                final ArgStorage args = new ArgStorage(a, b, c, d);
-                final R cached = results.get(args);
-                if (null == cached) {
-                    final R result = func4.call(a, b, c, d);
-                    results.put(args, result);
-                    return result;
-                } else {
-                    return cached;
-                }
-            }
-        };
+        return builder().memoize(func4);
     }
 
     /**
@@ -172,21 +148,7 @@ public final class RxMemoization {
      */
     public static <A, B, C, D, E, R> Func5<A, B, C, D, E, R> memoize(
             final Func5<A, B, C, D, E, R> func5) {
-        final Map<ArgStorage, R> results = new ConcurrentHashMap<ArgStorage, R>();
-        return new Func5<A, B, C, D, E, R>() {
-            @Override
-            public R call(A a, B b, C c, D d, E e) {
-                final ArgStorage args = new ArgStorage(a, b, c, d, e);
-                final R cached = results.get(args);
-                if (null == cached) {
-                    final R result = func5.call(a, b, c, d, e);
-                    results.put(args, result);
-                    return result;
-                } else {
-                    return cached;
-                }
-            }
-        };
+        return builder().memoize(func5);
     }
 
     /**
@@ -197,21 +159,7 @@ public final class RxMemoization {
      */
     public static <A, B, C, D, E, F, R> Func6<A, B, C, D, E, F, R> memoize(
             final Func6<A, B, C, D, E, F, R> func6) {
-        final Map<ArgStorage, R> results = new ConcurrentHashMap<ArgStorage, R>();
-        return new Func6<A, B, C, D, E, F, R>() {
-            @Override
-            public R call(A a, B b, C c, D d, E e, F f) {
-                final ArgStorage args = new ArgStorage(a, b, c, d, e, f);
-                final R cached = results.get(args);
-                if (null == cached) {
-                    final R result = func6.call(a, b, c, d, e, f);
-                    results.put(args, result);
-                    return result;
-                } else {
-                    return cached;
-                }
-            }
-        };
+        return builder().memoize(func6);
     }
 
     /**
@@ -222,21 +170,7 @@ public final class RxMemoization {
      */
     public static <A, B, C, D, E, F, G, R> Func7<A, B, C, D, E, F, G, R> memoize(
             final Func7<A, B, C, D, E, F, G, R> func7) {
-        final Map<ArgStorage, R> results = new ConcurrentHashMap<ArgStorage, R>();
-        return new Func7<A, B, C, D, E, F, G, R>() {
-            @Override
-            public R call(A a, B b, C c, D d, E e, F f, G g) {
-                final ArgStorage args = new ArgStorage(a, b, c, d, e, f, g);
-                final R cached = results.get(args);
-                if (null == cached) {
-                    final R result = func7.call(a, b, c, d, e, f, g);
-                    results.put(args, result);
-                    return result;
-                } else {
-                    return cached;
-                }
-            }
-        };
+        return builder().memoize(func7);
     }
 
     /**
@@ -247,21 +181,7 @@ public final class RxMemoization {
      */
     public static <A, B, C, D, E, F, G, H, R> Func8<A, B, C, D, E, F, G, H, R> memoize(
             final Func8<A, B, C, D, E, F, G, H, R> func8) {
-        final Map<ArgStorage, R> results = new ConcurrentHashMap<ArgStorage, R>();
-        return new Func8<A, B, C, D, E, F, G, H, R>() {
-            @Override
-            public R call(A a, B b, C c, D d, E e, F f, G g, H h) {
-                final ArgStorage args = new ArgStorage(a, b, c, d, e, f, g, h);
-                final R cached = results.get(args);
-                if (null == cached) {
-                    final R result = func8.call(a, b, c, d, e, f, g, h);
-                    results.put(args, result);
-                    return result;
-                } else {
-                    return cached;
-                }
-            }
-        };
+        return builder().memoize(func8);
     }
 
     /**
@@ -272,21 +192,7 @@ public final class RxMemoization {
      */
     public static <A, B, C, D, E, F, G, H, I, R> Func9<A, B, C, D, E, F, G, H, I, R> memoize(
             final Func9<A, B, C, D, E, F, G, H, I, R> func9) {
-        final Map<ArgStorage, R> results = new ConcurrentHashMap<ArgStorage, R>();
-        return new Func9<A, B, C, D, E, F, G, H, I, R>() {
-            @Override
-            public R call(A a, B b, C c, D d, E e, F f, G g, H h, I i) {
-                final ArgStorage args = new ArgStorage(a, b, c, d, e, f, g, h, i);
-                final R cached = results.get(args);
-                if (null == cached) {
-                    final R result = func9.call(a, b, c, d, e, f, g, h, i);
-                    results.put(args, result);
-                    return result;
-                } else {
-                    return cached;
-                }
-            }
-        };
+        return builder().memoize(func9);
     }
 
     /**
@@ -296,46 +202,533 @@ public final class RxMemoization {
      * @return function caching results
      */
     public static <R> FuncN<R> memoize(final FuncN<R> funcN) {
-        final Map<ArgStorage, R> results = new ConcurrentHashMap<ArgStorage, R>();
-        return new FuncN<R>() {
+        return builder().memoize(funcN);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func0 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <R> Func0<Observable<R>> memoizeObservable(
+            final Func0<Observable<R>> func0) {
+        return builder().memoizeObservable(func0);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func1 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <A, R> Func1<A, Observable<R>> memoizeObservable(
+            final Func1<A, Observable<R>> func1) {
+        return builder().memoizeObservable(func1);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func2 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <A, B, R> Func2<A, B, Observable<R>> memoizeObservable(
+            final Func2<A, B, Observable<R>> func2) {
+        return builder().memoizeObservable(func2);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func3 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <A, B, C, R> Func3<A, B, C, Observable<R>> memoizeObservable(
+            final Func3<A, B, C, Observable<R>> func3) {
+        return builder().memoizeObservable(func3);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func4 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <A, B, C, D, R> Func4<A, B, C, D, Observable<R>> memoizeObservable(
+            final Func4<A, B, C, D, Observable<R>> func4) {
+        return builder().memoizeObservable(func4);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func5 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <A, B, C, D, E, R> Func5<A, B, C, D, E, Observable<R>> memoizeObservable(
+            final Func5<A, B, C, D, E, Observable<R>> func5) {
+        return builder().memoizeObservable(func5);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func6 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <A, B, C, D, E, F, R> Func6<A, B, C, D, E, F, Observable<R>> memoizeObservable(
+            final Func6<A, B, C, D, E, F, Observable<R>> func6) {
+        return builder().memoizeObservable(func6);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func7 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <A, B, C, D, E, F, G, R> Func7<A, B, C, D, E, F, G, Observable<R>>
+            memoizeObservable(final Func7<A, B, C, D, E, F, G, Observable<R>> func7) {
+        return builder().memoizeObservable(func7);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func8 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <A, B, C, D, E, F, G, H, R> Func8<A, B, C, D, E, F, G, H, Observable<R>>
+            memoizeObservable(final Func8<A, B, C, D, E, F, G, H, Observable<R>> func8) {
+        return builder().memoizeObservable(func8);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param func9 function to wrap
+     * @return function sharing and caching results
+     */
+    public static <A, B, C, D, E, F, G, H, I, R> Func9<A, B, C, D, E, F, G, H, I, Observable<R>>
+            memoizeObservable(final Func9<A, B, C, D, E, F, G, H, I, Observable<R>> func9) {
+        return builder().memoizeObservable(func9);
+    }
+
+    /**
+     * Return a new version of the function sharing the {@link Observable} it returns between all
+     * the callers with the same parameters. The function is subscribed to once, and once it
+     * completes its values are replayed without calling it again. Failed results are not cached.
+     *
+     * @param funcN function to wrap
+     * @return function sharing and caching results
+     */
+    public static <R> FuncN<Observable<R>> memoizeObservable(
+            final FuncN<Observable<R>> funcN) {
+        return builder().memoizeObservable(funcN);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func0 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <R> Func0<Observable<R>> memoizeAsync(final Func0<R> func0) {
+        return builder().memoizeAsync(func0);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func1 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <A, R> Func1<A, Observable<R>> memoizeAsync(final Func1<A, R> func1) {
+        return builder().memoizeAsync(func1);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func2 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <A, B, R> Func2<A, B, Observable<R>> memoizeAsync(final Func2<A, B, R> func2) {
+        return builder().memoizeAsync(func2);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func3 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <A, B, C, R> Func3<A, B, C, Observable<R>> memoizeAsync(
+            final Func3<A, B, C, R> func3) {
+        return builder().memoizeAsync(func3);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func4 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <A, B, C, D, R> Func4<A, B, C, D, Observable<R>> memoizeAsync(
+            final Func4<A, B, C, D, R> func4) {
+        return builder().memoizeAsync(func4);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func5 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <A, B, C, D, E, R> Func5<A, B, C, D, E, Observable<R>> memoizeAsync(
+            final Func5<A, B, C, D, E, R> func5) {
+        return builder().memoizeAsync(func5);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func6 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <A, B, C, D, E, F, R> Func6<A, B, C, D, E, F, Observable<R>> memoizeAsync(
+            final Func6<A, B, C, D, E, F, R> func6) {
+        return builder().memoizeAsync(func6);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func7 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <A, B, C, D, E, F, G, R> Func7<A, B, C, D, E, F, G, Observable<R>> memoizeAsync(
+            final Func7<A, B, C, D, E, F, G, R> func7) {
+        return builder().memoizeAsync(func7);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func8 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <A, B, C, D, E, F, G, H, R> Func8<A, B, C, D, E, F, G, H, Observable<R>>
+            memoizeAsync(final Func8<A, B, C, D, E, F, G, H, R> func8) {
+        return builder().memoizeAsync(func8);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param func9 function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <A, B, C, D, E, F, G, H, I, R> Func9<A, B, C, D, E, F, G, H, I, Observable<R>>
+            memoizeAsync(final Func9<A, B, C, D, E, F, G, H, I, R> func9) {
+        return builder().memoizeAsync(func9);
+    }
+
+    /**
+     * Return a new version of the function returning its result as an {@link Observable}, so
+     * callers never block. A hit replays the stored result right away, and a miss calls the
+     * function on {@link rx.schedulers.Schedulers#io()}. There is a single load in flight for
+     * each set of parameters, shared by every subscriber, and it keeps running even if all of
+     * them unsubscribe. Failed results are not cached.
+     *
+     * @param funcN function to wrap
+     * @return function returning results asynchronously
+     * @see MemoizationBuilder#asyncScheduler(rx.Scheduler)
+     */
+    public static <R> FuncN<Observable<R>> memoizeAsync(final FuncN<R> funcN) {
+        return builder().memoizeAsync(funcN);
+    }
+
+    /**
+     * Return a new version of a recursive function that caches results, including the ones of its
+     * recursive calls. The function receives its memoized version as the first parameter, and has
+     * to recurse through it.
+     *
+     * @param func2 function to wrap, receiving itself memoized and the parameter
+     * @return function caching results
+     */
+    public static <A, R> Func1<A, R> memoizeRecursive(final Func2<Func1<A, R>, A, R> func2) {
+        return builder().memoizeRecursive(func2);
+    }
+
+    /**
+     * Return a new version of a recursive function that caches results, including the ones of its
+     * recursive calls. The function receives its memoized version as the first parameter, and has
+     * to recurse through it.
+     *
+     * @param func3 function to wrap, receiving itself memoized and the parameters
+     * @return function caching results
+     */
+    public static <A, B, R> Func2<A, B, R> memoizeRecursive(
+            final Func3<Func2<A, B, R>, A, B, R> func3) {
+        return builder().memoizeRecursive(func3);
+    }
+
+    /**
+     * Return a new version of a recursive function that caches results, including the ones of its
+     * recursive calls. The function receives its memoized version as the first parameter, and has
+     * to recurse through it.
+     *
+     * @param func4 function to wrap, receiving itself memoized and the parameters
+     * @return function caching results
+     */
+    public static <A, B, C, R> Func3<A, B, C, R> memoizeRecursive(
+            final Func4<Func3<A, B, C, R>, A, B, C, R> func4) {
+        return builder().memoizeRecursive(func4);
+    }
+
+    /**
+     * Return a new version of the function that caches results, computing the missing ones in
+     * batches. Calls missing a result within the time window are collected into one call to the
+     * batch function, and wait for it before returning. Stored results are returned right away.
+     *
+     * @param batchFunction function computing the results for a set of parameters, parameters
+     *            missing from the returned map get a null result
+     * @param window time to wait for more parameters after the first miss of a batch
+     * @param unit unit of the window
+     * @param maxBatchSize number of parameters that loads a batch without waiting for the window
+     * @return function caching results
+     */
+    public static <A, R> Func1<A, R> memoizeBatched(final Func1<Set<A>, Map<A, R>> batchFunction,
+            long window, TimeUnit unit, int maxBatchSize) {
+        return builder().memoizeBatched(batchFunction, window, unit, maxBatchSize);
+    }
+
+    /**
+     * Return a new version of the function that caches results, keeping them in a table with
+     * primitive keys that uses several times less memory than the one in {@link #memoize(Func1)}
+     *
+     * @param func1 function to wrap
+     * @return function caching results, throwing {@link NullPointerException} for null
+     *         parameters as they can't be stored as primitives
+     */
+    public static <R> Func1<Integer, R> memoizeInt(final Func1<Integer, R> func1) {
+        final LongMemoCache<R> cache = new LongMemoCache<R>(new Func1<Long, R>() {
+            @Override
+            public R call(Long key) {
+                return func1.call((int)key.longValue());
+            }
+        }, INT_PARAMETERS);
+        return new Memoized1<Integer, R>(cache) {
             @Override
-            public R call(Object... objects) {
-                ArgStorage args = new ArgStorage(objects);
-                final R cached = results.get(args);
-                if (null == cached) {
-                    final R result = funcN.call(args.storage);
-                    results.put(args, result);
-                    return result;
-                } else {
-                    return cached;
+            public R call(Integer a) {
+                if (null == a) {
+                    throw new NullPointerException("a");
                 }
+                final long key = a.intValue();
+                final R cached = cache.getIfPresent(key);
+                return null != cached ? MemoCache.unmask(cached) : cache.get(key);
+            }
+
+            @Override
+            Object key(Object[] parameters) {
+                return (long)((Integer)parameters[0]).intValue();
             }
         };
     }
 
-    private static final class ArgStorage {
-        private final Object[] storage;
+    /**
+     * Return a new version of the function that caches results, keeping them in an array with a
+     * slot for each parameter in the range
+     *
+     * @param func1 function to wrap
+     * @param from lowest parameter, inclusive
+     * @param to highest parameter, exclusive
+     * @return function caching results, throwing {@link IllegalArgumentException} for parameters
+     *         outside of the range and {@link NullPointerException} for null parameters
+     * @throws IllegalArgumentException if the range is too large for an array
+     */
+    public static <R> Func1<Integer, R> memoizeInt(final Func1<Integer, R> func1, int from,
+            int to) {
+        if ((long)to - from > MAXIMUM_DENSE_RANGE) {
+            throw new IllegalArgumentException("Range [" + from + ", " + to
+                    + ") too large for an array, use memoizeInt(Func1) instead");
+        }
+        final DenseMemoCache<R> cache = new DenseMemoCache<R>(func1, from, to);
+        return new Memoized1<Integer, R>(cache) {
+            @Override
+            public R call(Integer a) {
+                if (null == a) {
+                    throw new NullPointerException("a");
+                }
+                final R cached = cache.getIfPresent(a.intValue());
+                return null != cached ? MemoCache.unmask(cached) : cache.get(a);
+            }
+        };
+    }
 
-        private final int hashCode;
+    /**
+     * Return a new version of the function that caches results, keeping them in a table with
+     * primitive keys that uses several times less memory than the one in {@link #memoize(Func2)}
+     *
+     * @param func2 function to wrap
+     * @return function caching results, throwing {@link NullPointerException} for null
+     *         parameters as they can't be stored as primitives
+     */
+    public static <R> Func2<Integer, Integer, R> memoizeInt(
+            final Func2<Integer, Integer, R> func2) {
+        final LongMemoCache<R> cache = new LongMemoCache<R>(new Func1<Long, R>() {
+            @Override
+            public R call(Long key) {
+                return func2.call((int)(key >>> 32), (int)key.longValue());
+            }
+        }, INT_PAIR_PARAMETERS);
+        return new Memoized2<Integer, Integer, R>(cache) {
+            @Override
+            public R call(Integer a, Integer b) {
+                if (null == a || null == b) {
+                    throw new NullPointerException(null == a ? "a" : "b");
+                }
+                final long key = pack(a.intValue(), b.intValue());
+                final R cached = cache.getIfPresent(key);
+                return null != cached ? MemoCache.unmask(cached) : cache.get(key);
+            }
 
-        ArgStorage(Object... storage) {
-            this.storage = storage;
-            this.hashCode = Arrays.hashCode(this.storage);
-        }
+            @Override
+            Object key(Object[] parameters) {
+                return pack((Integer)parameters[0], (Integer)parameters[1]);
+            }
+        };
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o)
-                return true;
-            if (o == null || getClass() != o.getClass())
-                return false;
-            ArgStorage that = (ArgStorage)o;
-            return Arrays.equals(storage, that.storage);
-        }
+    /**
+     * Return a new version of the function that caches results, keeping them in a table with
+     * primitive keys that uses several times less memory than the one in {@link #memoize(Func1)}
+     *
+     * @param func1 function to wrap
+     * @return function caching results, throwing {@link NullPointerException} for null
+     *         parameters as they can't be stored as primitives
+     */
+    public static <R> Func1<Long, R> memoizeLong(final Func1<Long, R> func1) {
+        final LongMemoCache<R> cache = new LongMemoCache<R>(func1);
+        return new Memoized1<Long, R>(cache) {
+            @Override
+            public R call(Long a) {
+                if (null == a) {
+                    throw new NullPointerException("a");
+                }
+                final R cached = cache.getIfPresent(a.longValue());
+                return null != cached ? MemoCache.unmask(cached) : cache.get(a);
+            }
+        };
+    }
 
-        @Override
-        public int hashCode() {
-            return hashCode;
-        }
+    /**
+     * Return a new version of the function that caches results, keeping them in a table with
+     * primitive keys that uses several times less memory than the one in {@link #memoize(Func1)}.
+     * Parameters are compared like {@link Double#equals(Object)}.
+     *
+     * @param func1 function to wrap
+     * @return function caching results, throwing {@link NullPointerException} for null
+     *         parameters as they can't be stored as primitives
+     */
+    public static <R> Func1<Double, R> memoizeDouble(final Func1<Double, R> func1) {
+        final LongMemoCache<R> cache = new LongMemoCache<R>(new Func1<Long, R>() {
+            @Override
+            public R call(Long key) {
+                return func1.call(Double.longBitsToDouble(key));
+            }
+        }, DOUBLE_PARAMETERS);
+        return new Memoized1<Double, R>(cache) {
+            @Override
+            public R call(Double a) {
+                if (null == a) {
+                    throw new NullPointerException("a");
+                }
+                final long key = Double.doubleToLongBits(a);
+                final R cached = cache.getIfPresent(key);
+                return null != cached ? MemoCache.unmask(cached) : cache.get(key);
+            }
+
+            @Override
+            Object key(Object[] parameters) {
+                return Double.doubleToLongBits((Double)parameters[0]);
+            }
+        };
+    }
+
+    private static long pack(int a, int b) {
+        return ((long)a << 32) | (b & 0xffffffffL);
     }
 }
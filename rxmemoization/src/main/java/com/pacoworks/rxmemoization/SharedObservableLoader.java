@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func1;
+
+/**
+ * Loader turning the {@link Observable} returned by a function into one that is shared by all the
+ * callers with the same parameters.
+ * <p/>
+ * The upstream is subscribed to once and its notifications are replayed to every subscriber, so
+ * after it completes the same values are returned without calling it again. If it fails the
+ * shared {@link Observable} is removed from the storage before the error reaches the subscribers,
+ * and the next call subscribes to the function again.
+ *
+ * @author pakoito
+ */
+final class SharedObservableLoader<K, R> implements Func1<K, Observable<R>> {
+    private final Func1<? super K, ? extends Observable<R>> source;
+
+    private MemoCache<K, Observable<R>> cache;
+
+    SharedObservableLoader(Func1<? super K, ? extends Observable<R>> source) {
+        this.source = source;
+    }
+
+    /**
+     * Creates the storage sharing the {@link Observable} returned by the function
+     *
+     * @param builder configuration of the storage
+     * @param source function to wrap
+     * @return storage for the shared observables
+     */
+    static <K, R> MemoCache<K, Observable<R>> newCache(MemoizationBuilder builder,
+            Func1<? super K, ? extends Observable<R>> source) {
+        final SharedObservableLoader<K, R> loader = new SharedObservableLoader<K, R>(source);
+        loader.cache = builder.newCache(loader);
+        return loader.cache;
+    }
+
+    @Override
+    public Observable<R> call(final K key) {
+        final RemoveOnError<K, R> removeOnError = new RemoveOnError<K, R>(cache, key);
+        final Observable<R> shared = source.call(key).doOnError(removeOnError).cache();
+        removeOnError.shared = shared;
+        return shared;
+    }
+
+    private static final class RemoveOnError<K, R> implements Action1<Throwable> {
+        private final MemoCache<K, Observable<R>> cache;
+
+        private final K key;
+
+        volatile Observable<R> shared;
+
+        RemoveOnError(MemoCache<K, Observable<R>> cache, K key) {
+            this.cache = cache;
+            this.key = key;
+        }
+
+        @Override
+        public void call(Throwable throwable) {
+            cache.removeLoaded(key, shared);
+        }
+    }
+}
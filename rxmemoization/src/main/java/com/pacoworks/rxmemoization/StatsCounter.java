@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Striped counters backing {@link MemoizationStats}.
+ * <p/>
+ * Each thread adds to the stripe picked by its id, using the same striping as {@link ReadBuffer},
+ * so threads calling the same function rarely write to the same cache line. Reading a counter sums
+ * every stripe.
+ *
+ * @author pakoito
+ */
+final class StatsCounter {
+    private static final int HITS = 0;
+
+    private static final int MISSES = 1;
+
+    private static final int LOADS = 2;
+
+    private static final int LOAD_TIME = 3;
+
+    private static final int EVICTIONS = 4;
+
+    private final AtomicLongArray counters = new AtomicLongArray(ReadBuffer.STRIPES
+            * ReadBuffer.PADDING);
+
+    void recordHit() {
+        add(HITS, 1);
+    }
+
+    void recordMiss() {
+        add(MISSES, 1);
+    }
+
+    void recordLoad(long nanos) {
+        add(LOADS, 1);
+        add(LOAD_TIME, nanos);
+    }
+
+    void recordEviction() {
+        add(EVICTIONS, 1);
+    }
+
+    long hitCount() {
+        return sum(HITS);
+    }
+
+    long missCount() {
+        return sum(MISSES);
+    }
+
+    long loadCount() {
+        return sum(LOADS);
+    }
+
+    long totalLoadTime() {
+        return sum(LOAD_TIME);
+    }
+
+    long evictionCount() {
+        return sum(EVICTIONS);
+    }
+
+    private void add(int counter, long delta) {
+        final int stripe = (int)Thread.currentThread().getId() & (ReadBuffer.STRIPES - 1);
+        counters.getAndAdd(stripe * ReadBuffer.PADDING + counter, delta);
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int stripe = 0; stripe < ReadBuffer.STRIPES; stripe++) {
+            sum += counters.get(stripe * ReadBuffer.PADDING + counter);
+        }
+        return sum;
+    }
+}
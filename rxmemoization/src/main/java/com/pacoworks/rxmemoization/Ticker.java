@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+/**
+ * Source of time used to expire memoized results.
+ *
+ * @author pakoito
+ * @see MemoizationBuilder#ticker(Ticker)
+ */
+public interface Ticker {
+    /**
+     * Ticker reading {@link System#nanoTime()}
+     */
+    Ticker SYSTEM = new Ticker() {
+        @Override
+        public long read() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * Returns the time elapsed since a fixed but arbitrary point
+     *
+     * @return time in nanoseconds
+     */
+    long read();
+}
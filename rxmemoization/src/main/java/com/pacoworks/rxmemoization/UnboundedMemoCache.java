@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.functions.Action2;
+import rx.functions.Func1;
+
+/**
+ * Storage that keeps every result until the memoized function is garbage collected.
+ *
+ * @author pakoito
+ */
+final class UnboundedMemoCache<K, R> extends MemoCache<K, R> {
+    private final ConcurrentHashMap<K, R> results = new ConcurrentHashMap<K, R>();
+
+    UnboundedMemoCache(MemoizationBuilder builder, Func1<? super K, ? extends R> loader) {
+        super(loader, builder);
+    }
+
+    @Override
+    R getIfPresent(K key) {
+        return results.get(key);
+    }
+
+    @Override
+    void put(K key, R result) {
+        results.put(key, result);
+    }
+
+    @Override
+    boolean putIfAbsent(K key, R result) {
+        return null == results.putIfAbsent(key, result);
+    }
+
+    @Override
+    void remove(K key, R result) {
+        if (results.remove(key, result)) {
+            removed(key);
+        }
+    }
+
+    @Override
+    long size() {
+        return results.size();
+    }
+
+    @Override
+    void forEach(Action2<? super K, ? super R> action) {
+        for (Map.Entry<K, R> entry : results.entrySet()) {
+            action.call(entry.getKey(), entry.getValue());
+        }
+    }
+}
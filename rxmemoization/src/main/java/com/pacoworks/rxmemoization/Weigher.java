@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pacoworks.rxmemoization;
+
+/**
+ * Estimates how much of a {@link MemoizationPool} a memoized result uses, in whatever unit the
+ * budget of the pool is expressed.
+ *
+ * @author pakoito
+ * @see MemoizationPool
+ */
+public interface Weigher {
+    /**
+     * Weigher counting every result as 1, making the budget of the pool a number of results
+     */
+    Weigher SINGLETON = new Weigher() {
+        @Override
+        public int weigh(Object result) {
+            return 1;
+        }
+    };
+
+    /**
+     * Returns the weight of a result. Called once when the result is stored.
+     *
+     * @param result result of a memoized function, may be null
+     * @return weight of the result, not negative
+     */
+    int weigh(Object result);
+}
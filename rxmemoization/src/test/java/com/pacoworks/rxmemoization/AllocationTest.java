@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.functions.Func9;
+import rx.functions.FuncN;
+
+public class AllocationTest {
+    private static final int ITERATIONS = 100000;
+
+    private static final Integer ONE = 1;
+
+    private static final Integer TWO = 2;
+
+    private com.sun.management.ThreadMXBean threadBean;
+
+    @Before
+    public void setUp() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean)bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void testMemoize1HitDoesNotAllocate() {
+        final Func1<Integer, Integer> memoized = RxMemoization.memoize(new Func1<Integer, Integer>() {
+            @Override
+            public Integer call(Integer integer) {
+                return integer + 1;
+            }
+        });
+        assertNoAllocation(new Action0() {
+            @Override
+            public void call() {
+                memoized.call(ONE);
+            }
+        });
+    }
+
+    @Test
+    public void testMemoize2HitDoesNotAllocate() {
+        final Func2<Integer, Integer, Integer> memoized = RxMemoization
+                .memoize(new Func2<Integer, Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer, Integer integer2) {
+                        return integer + integer2;
+                    }
+                });
+        assertNoAllocation(new Action0() {
+            @Override
+            public void call() {
+                memoized.call(ONE, TWO);
+            }
+        });
+    }
+
+    @Test
+    public void testMemoize9HitDoesNotAllocate() {
+        final Func9<Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer> memoized = RxMemoization
+                .memoize(new Func9<Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer, Integer integer2, Integer integer3,
+                            Integer integer4, Integer integer5, Integer integer6, Integer integer7,
+                            Integer integer8, Integer integer9) {
+                        return integer + integer9;
+                    }
+                });
+        assertNoAllocation(new Action0() {
+            @Override
+            public void call() {
+                memoized.call(ONE, TWO, ONE, TWO, ONE, TWO, ONE, TWO, ONE);
+            }
+        });
+    }
+
+    @Test
+    public void testMemoizeNHitDoesNotAllocate() {
+        final Object[] args = new Object[] {
+                ONE, TWO, ONE
+        };
+        final FuncN<Integer> memoized = RxMemoization.memoize(new FuncN<Integer>() {
+            @Override
+            public Integer call(Object... args) {
+                return args.length;
+            }
+        });
+        assertNoAllocation(new Action0() {
+            @Override
+            public void call() {
+                memoized.call(args);
+            }
+        });
+    }
+
+    @Test
+    public void testBoundedMemoize2HitDoesNotAllocate() {
+        final Func2<Integer, Integer, Integer> memoized = RxMemoization.builder().maximumSize(100)
+                .memoize(new Func2<Integer, Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer, Integer integer2) {
+                        return integer + integer2;
+                    }
+                });
+        assertNoAllocation(new Action0() {
+            @Override
+            public void call() {
+                memoized.call(ONE, TWO);
+            }
+        });
+    }
+
+    @Test
+    public void testMemoizeLongHitDoesNotAllocate() {
+        final Long key = 1L;
+        final Func1<Long, Long> memoized = RxMemoization.memoizeLong(new Func1<Long, Long>() {
+            @Override
+            public Long call(Long aLong) {
+                return aLong + 1;
+            }
+        });
+        assertNoAllocation(new Action0() {
+            @Override
+            public void call() {
+                memoized.call(key);
+            }
+        });
+    }
+
+    private void assertNoAllocation(Action0 hit) {
+        /* Warm up: first call is a miss, the rest initialise the thread's probes and buffers */
+        for (int i = 0; i < ITERATIONS; i++) {
+            hit.call();
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            hit.call();
+        }
+        final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        Assert.assertTrue("Allocated " + allocated + " bytes in " + ITERATIONS + " hits",
+                allocated < ITERATIONS);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.functions.Func1;
+import rx.schedulers.TestScheduler;
+
+public class BoundedMemoCacheTest {
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() {
+        final CountingLoader loader = new CountingLoader();
+        final BoundedMemoCache<Integer, Integer> cache = newCache(2, EvictionPolicy.LRU,
+                AdmissionPolicy.ALWAYS, loader);
+        cache.get(1);
+        cache.get(2);
+        cache.get(1);
+        cache.get(3);
+        Assert.assertEquals(3, loader.count.get());
+        Assert.assertNull(cache.getIfPresent(2));
+        Assert.assertEquals(Integer.valueOf(1), cache.getIfPresent(1));
+        Assert.assertEquals(Integer.valueOf(3), cache.getIfPresent(3));
+    }
+
+    @Test
+    public void testLruScanFlushesHotKey() {
+        final CountingLoader loader = new CountingLoader();
+        final BoundedMemoCache<Integer, Integer> cache = newCache(4, EvictionPolicy.LRU,
+                AdmissionPolicy.ALWAYS, loader);
+        cache.get(0);
+        cache.get(0);
+        for (int i = 1; i <= 10; i++) {
+            cache.get(i);
+        }
+        Assert.assertNull(cache.getIfPresent(0));
+    }
+
+    @Test
+    public void testSegmentedLruProtectsReusedKey() {
+        final CountingLoader loader = new CountingLoader();
+        final BoundedMemoCache<Integer, Integer> cache = newCache(4, EvictionPolicy.SEGMENTED_LRU,
+                AdmissionPolicy.ALWAYS, loader);
+        cache.get(0);
+        cache.get(0);
+        for (int i = 1; i <= 10; i++) {
+            cache.get(i);
+        }
+        Assert.assertEquals(Integer.valueOf(0), cache.getIfPresent(0));
+        Assert.assertEquals(11, loader.count.get());
+    }
+
+    @Test
+    public void testSizeStaysBounded() {
+        final CountingLoader loader = new CountingLoader();
+        final BoundedMemoCache<Integer, Integer> cache = newCache(10, EvictionPolicy.SEGMENTED_LRU,
+                AdmissionPolicy.ALWAYS, loader);
+        for (int i = 0; i < 1000; i++) {
+            cache.get(i % 37);
+            cache.get(i);
+        }
+        int present = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (null != cache.getIfPresent(i)) {
+                present++;
+            }
+        }
+        Assert.assertTrue(present <= 10);
+    }
+
+    @Test
+    public void testTinyLfuRejectsOneHitWonders() {
+        final CountingLoader always = new CountingLoader();
+        final CountingLoader tinyLfu = new CountingLoader();
+        runSkewedWorkload(newCache(10, EvictionPolicy.LRU, AdmissionPolicy.ALWAYS, always));
+        runSkewedWorkload(newCache(10, EvictionPolicy.LRU, AdmissionPolicy.TINY_LFU, tinyLfu));
+        Assert.assertTrue(tinyLfu.count.get() < always.count.get() / 2);
+    }
+
+    @Test
+    public void testTinyLfuAdmitsKeysThatBecomePopular() {
+        final CountingLoader loader = new CountingLoader();
+        final BoundedMemoCache<Integer, Integer> cache = newCache(2, EvictionPolicy.LRU,
+                AdmissionPolicy.TINY_LFU, loader);
+        cache.get(0);
+        cache.get(1);
+        for (int i = 0; i < 5; i++) {
+            cache.get(2);
+        }
+        Assert.assertEquals(Integer.valueOf(2), cache.getIfPresent(2));
+    }
+
+    @Test
+    public void testExpiredResultsAreDropped() {
+        final CountingLoader loader = new CountingLoader();
+        final TestScheduler scheduler = new TestScheduler();
+        final BoundedMemoCache<Integer, Integer> cache = new BoundedMemoCache<Integer, Integer>(
+                RxMemoization.builder().ticker(scheduler).expireAfterWrite(1, TimeUnit.SECONDS),
+                loader);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+        }
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        cache.get(1000);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNull(cache.getIfPresent(i));
+        }
+        Assert.assertEquals(Integer.valueOf(1000), cache.getIfPresent(1000));
+    }
+
+    private static BoundedMemoCache<Integer, Integer> newCache(long maximumSize,
+            EvictionPolicy evictionPolicy, AdmissionPolicy admissionPolicy, CountingLoader loader) {
+        return new BoundedMemoCache<Integer, Integer>(RxMemoization.builder()
+                .maximumSize(maximumSize).evictionPolicy(evictionPolicy)
+                .admissionPolicy(admissionPolicy), loader);
+    }
+
+    private static void runSkewedWorkload(BoundedMemoCache<Integer, Integer> cache) {
+        for (int i = 0; i < 1000; i++) {
+            for (int hot = 0; hot < 10; hot++) {
+                cache.get(hot);
+            }
+            cache.get(1000 + i);
+        }
+    }
+
+    private static final class CountingLoader implements Func1<Integer, Integer> {
+        final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Integer call(Integer integer) {
+            count.incrementAndGet();
+            return integer;
+        }
+    }
+}
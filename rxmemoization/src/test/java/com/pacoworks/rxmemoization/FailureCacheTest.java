@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FailureCacheTest {
+    private final MutableTicker ticker = new MutableTicker();
+
+    private final FailureCache<String> failures = new FailureCache<String>(1, 4, ticker);
+
+    @Test
+    public void testBackoffDoublesUpToMaximum() {
+        failures.failed("a", new IllegalStateException());
+        assertBackingOffFor("a", 1);
+        failures.failed("a", new IllegalStateException());
+        assertBackingOffFor("a", 2);
+        failures.failed("a", new IllegalStateException());
+        assertBackingOffFor("a", 4);
+        failures.failed("a", new IllegalStateException());
+        assertBackingOffFor("a", 4);
+    }
+
+    @Test
+    public void testSuccessResetsBackoff() {
+        failures.failed("a", new IllegalStateException());
+        failures.failed("a", new IllegalStateException());
+        failures.succeeded("a");
+        failures.check("a");
+        failures.failed("a", new IllegalStateException());
+        assertBackingOffFor("a", 1);
+    }
+
+    @Test
+    public void testOldFailureIsForgotten() {
+        failures.failed("a", new IllegalStateException());
+        failures.failed("a", new IllegalStateException());
+        // Backoff of 2 plus the maximum of 4
+        ticker.time += 6;
+        failures.failed("a", new IllegalStateException());
+        assertBackingOffFor("a", 1);
+    }
+
+    @Test
+    public void testKeysBackOffIndependently() {
+        failures.failed("a", new IllegalStateException());
+        failures.check("b");
+        failures.failed("b", new IllegalStateException());
+        failures.failed("b", new IllegalStateException());
+        assertBackingOffFor("a", 1);
+    }
+
+    private void assertBackingOffFor(String key, long nanos) {
+        final long start = ticker.time;
+        while (ticker.time - start < nanos) {
+            try {
+                failures.check(key);
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                // Still backing off
+            }
+            ticker.time++;
+        }
+        failures.check(key);
+    }
+
+    private static final class MutableTicker implements Ticker {
+        long time;
+
+        @Override
+        public long read() {
+            return time;
+        }
+    }
+}
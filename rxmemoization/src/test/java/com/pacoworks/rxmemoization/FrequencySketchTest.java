@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrequencySketchTest {
+    @Test
+    public void testIncrement() {
+        final FrequencySketch sketch = new FrequencySketch(64);
+        Assert.assertEquals(0, sketch.frequency(42));
+        sketch.increment(42);
+        sketch.increment(42);
+        sketch.increment(42);
+        Assert.assertEquals(3, sketch.frequency(42));
+    }
+
+    @Test
+    public void testSaturatesAtFifteen() {
+        final FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(7);
+        }
+        Assert.assertEquals(15, sketch.frequency(7));
+    }
+
+    @Test
+    public void testAging() {
+        final FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(7);
+        }
+        Assert.assertEquals(15, sketch.frequency(7));
+        /* Sample size is ten times the capacity, flooding with other keys halves the counters */
+        for (int i = 1000; i < 1000 + 640; i++) {
+            sketch.increment(i);
+        }
+        Assert.assertTrue(sketch.frequency(7) < 15);
+    }
+
+    @Test
+    public void testSampleSizeDoesNotOverflow() {
+        Assert.assertEquals(640, FrequencySketch.sampleSize(64));
+        Assert.assertEquals(2147483640, FrequencySketch.sampleSize(214748364));
+        Assert.assertEquals(Integer.MAX_VALUE, FrequencySketch.sampleSize(214748365));
+        Assert.assertEquals(Integer.MAX_VALUE, FrequencySketch.sampleSize(1 << 30));
+    }
+}
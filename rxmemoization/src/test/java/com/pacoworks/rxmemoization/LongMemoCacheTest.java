@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.functions.Func1;
+
+public class LongMemoCacheTest {
+    private static final Func1<Long, String> TO_STRING = new Func1<Long, String>() {
+        @Override
+        public String call(Long key) {
+            return String.valueOf(key);
+        }
+    };
+
+    @Test
+    public void testGrowsAndKeepsResults() {
+        final LongMemoCache<String> cache = new LongMemoCache<String>(TO_STRING);
+        for (long i = -5000; i < 5000; i++) {
+            Assert.assertEquals(String.valueOf(i * 31), cache.get(i * 31));
+        }
+        for (long i = -5000; i < 5000; i++) {
+            Assert.assertEquals(String.valueOf(i * 31), cache.getIfPresent(i * 31));
+        }
+        Assert.assertNull(cache.getIfPresent(1L));
+        Assert.assertNull(cache.getIfPresent(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testRemove() {
+        final LongMemoCache<String> cache = new LongMemoCache<String>(TO_STRING);
+        final String result = cache.get(42L);
+        cache.remove(42L, "other");
+        Assert.assertSame(result, cache.getIfPresent(42L));
+        cache.remove(42L, result);
+        Assert.assertNull(cache.getIfPresent(42L));
+        for (long i = 0; i < 1000; i++) {
+            cache.get(i);
+        }
+        Assert.assertEquals("42", cache.getIfPresent(42L));
+    }
+
+    @Test
+    public void testConcurrentReadsDuringGrowth() throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger(0);
+        final LongMemoCache<String> cache = new LongMemoCache<String>(new Func1<Long, String>() {
+            @Override
+            public String call(Long key) {
+                count.incrementAndGet();
+                return String.valueOf(key);
+            }
+        });
+        final int threads = 8;
+        final int keys = 20000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger wrong = new AtomicInteger(0);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (long i = 0; i < keys; i++) {
+                        if (!String.valueOf(i).equals(cache.get(i))) {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        Assert.assertEquals(0, wrong.get());
+        Assert.assertEquals(keys, count.get());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.functions.Func1;
+
+public class MemoizationPoolTest {
+    @Test
+    public void testEvictsAcrossFunctions() {
+        final MemoizationPool pool = new MemoizationPool(3);
+        final AtomicInteger calls = new AtomicInteger();
+        final Func1<Integer, Integer> first = counting(pool, calls);
+        final Func1<Integer, Integer> second = counting(pool, calls);
+        first.call(1);
+        first.call(2);
+        second.call(1);
+        second.call(2);
+        Assert.assertEquals(3, pool.weight());
+        Assert.assertEquals(1, pool.weight(first));
+        Assert.assertEquals(2, pool.weight(second));
+        Assert.assertEquals(1, ((MemoizationStats)first).size());
+        first.call(2);
+        Assert.assertEquals(4, calls.get());
+        first.call(1);
+        Assert.assertEquals(5, calls.get());
+        Assert.assertEquals(1, ((MemoizationStats)first).evictionCount());
+    }
+
+    @Test
+    public void testHitsKeepResults() {
+        final MemoizationPool pool = new MemoizationPool(2);
+        final AtomicInteger calls = new AtomicInteger();
+        final Func1<Integer, Integer> hot = counting(pool, calls);
+        final Func1<Integer, Integer> cold = counting(pool, calls);
+        hot.call(1);
+        cold.call(1);
+        hot.call(1);
+        cold.call(2);
+        Assert.assertEquals(2, pool.weight(hot) + pool.weight(cold));
+        hot.call(1);
+        Assert.assertEquals(3, calls.get());
+        Assert.assertEquals(1, pool.weight(hot));
+    }
+
+    @Test
+    public void testWeigher() {
+        final MemoizationPool pool = new MemoizationPool(10, new Weigher() {
+            @Override
+            public int weigh(Object result) {
+                return ((String)result).length();
+            }
+        });
+        final Func1<Integer, String> repeat = RxMemoization.builder().pool(pool).memoize(
+                new Func1<Integer, String>() {
+                    @Override
+                    public String call(Integer times) {
+                        final StringBuilder builder = new StringBuilder();
+                        for (int i = 0; i < times; i++) {
+                            builder.append('a');
+                        }
+                        return builder.toString();
+                    }
+                });
+        repeat.call(4);
+        repeat.call(5);
+        Assert.assertEquals(9, pool.weight(repeat));
+        repeat.call(3);
+        Assert.assertEquals(8, pool.weight(repeat));
+        Assert.assertEquals(2, ((MemoizationStats)repeat).size());
+        repeat.call(11);
+        Assert.assertEquals(0, pool.weight());
+    }
+
+    @Test
+    public void testInvalidateReleasesWeight() {
+        final MemoizationPool pool = new MemoizationPool(10);
+        final Func1<Integer, Integer> function = counting(pool, new AtomicInteger());
+        function.call(1);
+        function.call(2);
+        ((MemoizationInvalidator)function).invalidate(1);
+        Assert.assertEquals(1, pool.weight(function));
+        ((MemoizationInvalidator)function).invalidateAll();
+        Assert.assertEquals(0, pool.weight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotRegistered() {
+        new MemoizationPool(10).weight(counting(new MemoizationPool(10), new AtomicInteger()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMaximumSizeRejected() {
+        RxMemoization.builder().pool(new MemoizationPool(10)).maximumSize(10)
+                .memoize(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer value) {
+                        return value;
+                    }
+                });
+    }
+
+    private static Func1<Integer, Integer> counting(MemoizationPool pool,
+            final AtomicInteger calls) {
+        return RxMemoization.builder().pool(pool).recordStats()
+                .memoize(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer value) {
+                        calls.incrementAndGet();
+                        return value;
+                    }
+                });
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+public class MemoizationSnapshotTest {
+    private static final Codec<Object[]> PARAMETERS = new SerializableCodec<Object[]>();
+
+    private static final Codec<String> RESULTS = new SerializableCodec<String>();
+
+    @Test
+    public void testWriteAndRestore() throws IOException {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func2<Integer, String, String> concat = new Func2<Integer, String, String>() {
+            @Override
+            public String call(Integer integer, String s) {
+                count.incrementAndGet();
+                return null == s ? null : integer + s;
+            }
+        };
+        final Func2<Integer, String, String> first = RxMemoization.memoize(concat);
+        for (int i = 0; i < 100; i++) {
+            first.call(i, "a");
+        }
+        first.call(0, null);
+        final File file = writeToFile(first);
+        final Func2<Integer, String, String> second = RxMemoization.memoize(concat);
+        Assert.assertEquals("-1a", second.call(-1, "a"));
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        MemoizationSnapshot.restore(second, file, PARAMETERS, RESULTS).subscribe(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertValue(101);
+        count.set(0);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i + "a", second.call(i, "a"));
+        }
+        Assert.assertNull(second.call(0, null));
+        Assert.assertEquals(0, count.get());
+        Assert.assertEquals(102, ((MemoizationStats)second).size());
+    }
+
+    @Test
+    public void testWriteAndRestorePrimitiveKeys() throws IOException {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func2<Integer, Integer, String> concat = new Func2<Integer, Integer, String>() {
+            @Override
+            public String call(Integer integer, Integer integer2) {
+                count.incrementAndGet();
+                return integer + ":" + integer2;
+            }
+        };
+        final Func2<Integer, Integer, String> first = RxMemoization.memoizeInt(concat);
+        for (int i = 0; i < 10; i++) {
+            first.call(i, -i);
+        }
+        final File file = writeToFile(first);
+        final Func2<Integer, Integer, String> second = RxMemoization.memoizeInt(concat);
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        MemoizationSnapshot.restore(second, file, PARAMETERS, RESULTS).subscribe(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertValue(10);
+        count.set(0);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i + ":" + -i, second.call(i, -i));
+        }
+        Assert.assertEquals(0, count.get());
+        Assert.assertEquals(10, ((MemoizationStats)second).size());
+    }
+
+    @Test
+    public void testRestoreKeepsExistingResults() throws IOException {
+        final Func1<Integer, String> first = RxMemoization.memoize(new Func1<Integer, String>() {
+            @Override
+            public String call(Integer integer) {
+                return "old" + integer;
+            }
+        });
+        first.call(1);
+        first.call(2);
+        final File file = writeToFile(first);
+        final Func1<Integer, String> function = new Func1<Integer, String>() {
+            @Override
+            public String call(Integer integer) {
+                return "new" + integer;
+            }
+        };
+        for (Func1<Integer, String> second : Arrays.asList(RxMemoization.memoize(function),
+                RxMemoization.builder().maximumSize(10).memoize(function),
+                RxMemoization.builder().softValues().memoize(function),
+                RxMemoization.builder().pool(new MemoizationPool(10)).memoize(function),
+                RxMemoization.memoizeInt(function), RxMemoization.memoizeInt(function, 0, 10))) {
+            Assert.assertEquals("new1", second.call(1));
+            final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+            MemoizationSnapshot.restore(second, file, PARAMETERS, RESULTS).subscribe(subscriber);
+            subscriber.awaitTerminalEvent();
+            subscriber.assertValue(1);
+            Assert.assertEquals("new1", second.call(1));
+            Assert.assertEquals("old2", second.call(2));
+        }
+    }
+
+    @Test
+    public void testRestoreReplacesExpiredResults() throws IOException {
+        final Func1<Integer, String> first = RxMemoization.memoize(new Func1<Integer, String>() {
+            @Override
+            public String call(Integer integer) {
+                return "old" + integer;
+            }
+        });
+        first.call(1);
+        final File file = writeToFile(first);
+        final TestScheduler scheduler = new TestScheduler();
+        final Func1<Integer, String> second = RxMemoization.builder().ticker(scheduler)
+                .expireAfterWrite(1, TimeUnit.SECONDS).memoize(new Func1<Integer, String>() {
+                    @Override
+                    public String call(Integer integer) {
+                        return "new" + integer;
+                    }
+                });
+        Assert.assertEquals("new1", second.call(1));
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        MemoizationSnapshot.restore(second, file, PARAMETERS, RESULTS).subscribe(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertValue(1);
+        Assert.assertEquals("old1", second.call(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRestoreWeakKeysRejected() throws IOException {
+        final Func1<Integer, String> function = new Func1<Integer, String>() {
+            @Override
+            public String call(Integer integer) {
+                return "new" + integer;
+            }
+        };
+        final File file = writeToFile(RxMemoization.memoize(function));
+        MemoizationSnapshot.restore(RxMemoization.builder().weakKeys().memoize(function), file,
+                PARAMETERS, RESULTS);
+    }
+
+    @Test
+    public void testRestoreInvalidFile() throws IOException {
+        final File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        MemoizationSnapshot.restore(RxMemoization.memoize(new Func1<Integer, String>() {
+            @Override
+            public String call(Integer integer) {
+                return null;
+            }
+        }), file, PARAMETERS, RESULTS).subscribe(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertError(IOException.class);
+    }
+
+    private static File writeToFile(Object memoized) throws IOException {
+        final File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            MemoizationSnapshot.write(memoized, out, PARAMETERS, RESULTS);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static final class SerializableCodec<T> implements Codec<T> {
+        @Override
+        public byte[] encode(T value) {
+            try {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(value);
+                out.close();
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T decode(byte[] bytes) {
+            try {
+                return (T)new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
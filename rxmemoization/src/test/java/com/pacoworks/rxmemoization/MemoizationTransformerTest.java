@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+public class MemoizationTransformerTest {
+    @Test
+    public void testMapKeepsOrder() {
+        final Func1<Integer, Integer> memoized = RxMemoization
+                .memoize(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer) {
+                        // Later elements finish first
+                        sleep(100 - integer);
+                        return integer * 2;
+                    }
+                });
+        final List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i * 2);
+        }
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        Observable.range(0, 100)
+                .compose(MemoizationTransformer.map(memoized, 16, Schedulers.io()))
+                .subscribe(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertNoErrors();
+        subscriber.assertReceivedOnNext(expected);
+    }
+
+    @Test
+    public void testMapHitsAreSynchronous() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func1<Integer, Integer> memoized = RxMemoization
+                .memoize(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer) {
+                        count.incrementAndGet();
+                        return integer * 2;
+                    }
+                });
+        memoized.call(1);
+        memoized.call(2);
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        Observable.just(1, 2, 3, 1)
+                .compose(MemoizationTransformer.map(memoized, 4, scheduler))
+                .subscribe(subscriber);
+        subscriber.assertReceivedOnNext(Arrays.asList(2, 4));
+        scheduler.triggerActions();
+        subscriber.assertReceivedOnNext(Arrays.asList(2, 4, 6, 2));
+        subscriber.assertCompleted();
+        Assert.assertEquals(3, count.get());
+    }
+
+    @Test
+    public void testMapSharesDuplicates() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func1<Integer, Integer> memoized = RxMemoization
+                .memoize(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer) {
+                        count.incrementAndGet();
+                        return null == integer ? -1 : integer * 2;
+                    }
+                });
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        Observable.just(5, 5, null, 5, null)
+                .compose(MemoizationTransformer.map(memoized, 8, scheduler))
+                .subscribe(subscriber);
+        subscriber.assertNoValues();
+        scheduler.triggerActions();
+        subscriber.assertReceivedOnNext(Arrays.asList(10, 10, -1, 10, -1));
+        subscriber.assertCompleted();
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMapPrimitiveKeys() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func1<Integer, Integer> memoized = RxMemoization
+                .memoizeInt(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer) {
+                        count.incrementAndGet();
+                        return integer * 2;
+                    }
+                });
+        memoized.call(1);
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        Observable.just(1, 2, 2)
+                .compose(MemoizationTransformer.map(memoized, 4, scheduler))
+                .subscribe(subscriber);
+        subscriber.assertReceivedOnNext(Arrays.asList(2));
+        scheduler.triggerActions();
+        subscriber.assertReceivedOnNext(Arrays.asList(2, 4, 4));
+        subscriber.assertCompleted();
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMapSharesEquivalentElements() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func1<String, String> memoized = RxMemoization.builder()
+                .keyEquivalence(Equivalence.onResultOf(new Func1<Object, Object>() {
+                    @Override
+                    public Object call(Object parameter) {
+                        return ((String)parameter).charAt(0);
+                    }
+                })).memoize(new Func1<String, String>() {
+                    @Override
+                    public String call(String string) {
+                        count.incrementAndGet();
+                        return string.toUpperCase();
+                    }
+                });
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<String> subscriber = new TestSubscriber<String>();
+        Observable.just("a1", "a2", "b1")
+                .compose(MemoizationTransformer.map(memoized, 4, scheduler))
+                .subscribe(subscriber);
+        scheduler.triggerActions();
+        subscriber.assertReceivedOnNext(Arrays.asList("A1", "A1", "B1"));
+        subscriber.assertCompleted();
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMapBackpressure() {
+        final AtomicInteger emitted = new AtomicInteger(0);
+        final Func1<Integer, Integer> memoized = RxMemoization
+                .memoize(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer) {
+                        return integer * 2;
+                    }
+                });
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>(0);
+        Observable.range(0, 1000).doOnNext(new Action1<Integer>() {
+            @Override
+            public void call(Integer integer) {
+                emitted.incrementAndGet();
+            }
+        }).compose(MemoizationTransformer.map(memoized, 4, Schedulers.immediate()))
+                .subscribe(subscriber);
+        subscriber.requestMore(2);
+        subscriber.assertReceivedOnNext(Arrays.asList(0, 2));
+        Assert.assertTrue(emitted.get() < 1000);
+        subscriber.requestMore(Long.MAX_VALUE);
+        Assert.assertEquals(1000, subscriber.getOnNextEvents().size());
+        subscriber.assertCompleted();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+public class MemoizationWarmUpTest {
+    @Test
+    public void testWarmUpGrid() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func2<Integer, Integer, Integer> memoized = RxMemoization
+                .memoize(new Func2<Integer, Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        return integer * integer2;
+                    }
+                });
+        final List<Object[]> grid = new ArrayList<Object[]>();
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                grid.add(new Object[] {
+                        i, j
+                });
+            }
+        }
+        // Repeated parameters are computed once
+        grid.add(new Object[] {
+                3, 3
+        });
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        MemoizationWarmUp.warmUp(memoized, grid).subscribe(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertNoErrors();
+        Assert.assertEquals(101, subscriber.getOnNextEvents().size());
+        Assert.assertEquals(101, subscriber.getOnNextEvents().get(100).intValue());
+        Assert.assertEquals(100, count.get());
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                Assert.assertEquals(i * j, memoized.call(i, j).intValue());
+            }
+        }
+        Assert.assertEquals(100, count.get());
+    }
+
+    @Test
+    public void testWarmUpPrimitiveKeys() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func1<Integer, Integer> memoized = RxMemoization
+                .memoizeInt(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer) {
+                        count.incrementAndGet();
+                        return integer * 2;
+                    }
+                });
+        final List<Object[]> calls = new ArrayList<Object[]>();
+        for (int i = 0; i < 10; i++) {
+            calls.add(new Object[] {
+                    i
+            });
+        }
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        MemoizationWarmUp.warmUp(memoized, calls).subscribe(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertNoErrors();
+        Assert.assertEquals(10, count.get());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i * 2, memoized.call(i).intValue());
+        }
+        Assert.assertEquals(10, count.get());
+    }
+
+    @Test
+    public void testWarmUpBoundsConcurrency() {
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        final Func2<Integer, Integer, Integer> memoized = RxMemoization
+                .memoize(new Func2<Integer, Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer, Integer integer2) {
+                        final int now = running.incrementAndGet();
+                        int max;
+                        while (now > (max = maxRunning.get())
+                                && !maxRunning.compareAndSet(max, now)) {
+                            // Retry
+                        }
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                        return integer + integer2;
+                    }
+                });
+        final Observable<Object[]> parameters = Observable.range(0, 40).map(
+                new Func1<Integer, Object[]>() {
+                    @Override
+                    public Object[] call(Integer integer) {
+                        return new Object[] {
+                                integer, 1
+                        };
+                    }
+                });
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        MemoizationWarmUp.warmUp(memoized, parameters, 3, Schedulers.io()).subscribe(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertNoErrors();
+        Assert.assertEquals(40, subscriber.getOnNextEvents().size());
+        Assert.assertTrue(maxRunning.get() <= 3);
+        Assert.assertTrue(maxRunning.get() > 1);
+    }
+
+    @Test
+    public void testWarmUpFunc0() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func0<Integer> memoized = RxMemoization.memoize(new Func0<Integer>() {
+            @Override
+            public Integer call() {
+                return count.incrementAndGet();
+            }
+        });
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>();
+        final List<Object[]> parameters = new ArrayList<Object[]>();
+        parameters.add(new Object[0]);
+        MemoizationWarmUp.warmUp(memoized, parameters).subscribe(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertValue(1);
+        Assert.assertEquals(1, memoized.call().intValue());
+        Assert.assertEquals(1, count.get());
+    }
+}
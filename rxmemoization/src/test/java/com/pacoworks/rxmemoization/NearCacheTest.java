@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.pacoworks.rxmemoization.ArgKeys.Key2;
+
+public class NearCacheTest {
+    @Test
+    public void testGet() {
+        final NearCache<String, String> nearCache = new NearCache<String, String>(16);
+        Assert.assertNull(nearCache.get("a", 0));
+        nearCache.put("a", "A", 0);
+        Assert.assertEquals("A", nearCache.get("a", 0));
+        Assert.assertEquals("A", nearCache.get(new String("a"), 0));
+        Assert.assertNull(nearCache.get("b", 0));
+    }
+
+    @Test
+    public void testStaleGeneration() {
+        final NearCache<String, String> nearCache = new NearCache<String, String>(16);
+        nearCache.put("a", "A", 0);
+        Assert.assertNull(nearCache.get("a", 1));
+        nearCache.put("a", "B", 1);
+        Assert.assertEquals("B", nearCache.get("a", 1));
+    }
+
+    @Test
+    public void testSameSlotOverwrites() {
+        final NearCache<Integer, String> nearCache = new NearCache<Integer, String>(1);
+        nearCache.put(1, "1", 0);
+        nearCache.put(2, "2", 0);
+        Assert.assertNull(nearCache.get(1, 0));
+        Assert.assertEquals("2", nearCache.get(2, 0));
+    }
+
+    @Test
+    public void testProbeKey() {
+        final NearCache<Key2, String> nearCache = new NearCache<Key2, String>(16);
+        nearCache.put(Key2.probe(1, 2).copy(), "3", 0);
+        Assert.assertEquals("3", nearCache.get(Key2.probe(1, 2), 0));
+        Assert.assertNull(nearCache.get(Key2.probe(2, 1), 0));
+    }
+
+    @Test
+    public void testPerThread() throws InterruptedException {
+        final NearCache<String, String> nearCache = new NearCache<String, String>(16);
+        nearCache.put("a", "A", 0);
+        final String[] other = new String[] { "unset" };
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other[0] = nearCache.get("a", 0);
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertNull(other[0]);
+    }
+}
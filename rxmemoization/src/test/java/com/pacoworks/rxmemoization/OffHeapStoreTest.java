@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+public class OffHeapStoreTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Codec<String> STRING_CODEC = new Codec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, UTF_8);
+        }
+    };
+
+    @Test
+    public void testTakeRemovesResult() {
+        final OffHeapStore<Integer, String> store = new OffHeapStore<Integer, String>(64,
+                STRING_CODEC);
+        store.put(1, "one", store.epoch());
+        store.put(2, "two", store.epoch());
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals("one", store.take(1));
+        Assert.assertNull(store.take(1));
+        Assert.assertEquals("two", store.take(2));
+        Assert.assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testOverwritesOldestWhenFull() {
+        final OffHeapStore<Integer, String> store = new OffHeapStore<Integer, String>(10,
+                STRING_CODEC);
+        store.put(1, "aaaa", store.epoch());
+        store.put(2, "bbbb", store.epoch());
+        // Wraps around, overwriting 1
+        store.put(3, "cccc", store.epoch());
+        Assert.assertNull(store.take(1));
+        Assert.assertEquals("bbbb", store.take(2));
+        Assert.assertEquals("cccc", store.take(3));
+        // Bigger than the whole buffer
+        store.put(4, "eeeeeeeeeee", store.epoch());
+        Assert.assertNull(store.take(4));
+    }
+
+    @Test
+    public void testReplacedResultIsNotOverwrittenByOldSlot() {
+        final OffHeapStore<Integer, String> store = new OffHeapStore<Integer, String>(12,
+                STRING_CODEC);
+        store.put(1, "aaaa", store.epoch());
+        store.put(2, "bbbb", store.epoch());
+        store.put(1, "cccc", store.epoch());
+        // Overwrites the first slot of 1, which was already replaced
+        store.put(3, "dddd", store.epoch());
+        Assert.assertEquals("cccc", store.take(1));
+        Assert.assertEquals("bbbb", store.take(2));
+        Assert.assertEquals("dddd", store.take(3));
+    }
+
+    @Test
+    public void testDropsDemotionsStartedBeforeRemoval() {
+        final OffHeapStore<Integer, String> store = new OffHeapStore<Integer, String>(64,
+                STRING_CODEC);
+        final long epoch = store.epoch();
+        store.remove(1);
+        store.put(1, "one", epoch);
+        Assert.assertNull(store.take(1));
+        store.put(1, "one", store.epoch());
+        Assert.assertEquals("one", store.take(1));
+    }
+
+    @Test
+    public void testNullResults() {
+        final OffHeapStore<Integer, Object> store = new OffHeapStore<Integer, Object>(8,
+                new Codec<Object>() {
+                    @Override
+                    public byte[] encode(Object value) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public Object decode(byte[] bytes) {
+                        throw new UnsupportedOperationException();
+                    }
+                });
+        store.put(null, MemoCache.NULL, store.epoch());
+        Assert.assertSame(MemoCache.NULL, store.take(null));
+    }
+}
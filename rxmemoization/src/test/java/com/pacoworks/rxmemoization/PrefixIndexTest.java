@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import com.pacoworks.rxmemoization.ArgKeys.Key2;
+
+import rx.functions.Func1;
+
+public class PrefixIndexTest {
+    private final PrefixIndex<Object> index = new PrefixIndex<Object>();
+
+    private final MemoCache<Object, Object> storage = RxMemoization.builder().newCache(
+            new Func1<Object, Object>() {
+                @Override
+                public Object call(Object key) {
+                    return key;
+                }
+            });
+
+    @Test
+    public void testIndexesByFirstParameter() {
+        final Key2 a1 = key("a", 1);
+        final Key2 a2 = key("a", 2);
+        final Key2 b1 = key("b", 1);
+        index.add(a1);
+        index.add(a2);
+        index.add(b1);
+        Assert.assertEquals(new HashSet<Object>(Arrays.asList(a1, a2)),
+                new HashSet<Object>(index.get("a")));
+        Assert.assertEquals(Collections.singletonList(b1), index.get("b"));
+        Assert.assertTrue(index.get("c").isEmpty());
+    }
+
+    @Test
+    public void testRemove() {
+        index.add(key("a", 1));
+        index.add(key("a", 2));
+        index.remove(key("a", 1), storage);
+        Assert.assertEquals(Collections.singletonList(key("a", 2)), index.get("a"));
+        index.remove(key("a", 2), storage);
+        Assert.assertTrue(index.get("a").isEmpty());
+        // A new set replaces the removed one
+        index.add(key("a", 3));
+        Assert.assertEquals(Collections.singletonList(key("a", 3)), index.get("a"));
+    }
+
+    @Test
+    public void testKeepsKeysStoredAgain() {
+        index.add(key("a", 1));
+        // A newer result was stored before the old one was reported as dropped
+        storage.put(key("a", 1), 1);
+        index.remove(key("a", 1), storage);
+        Assert.assertEquals(Collections.singletonList(key("a", 1)), index.get("a"));
+    }
+
+    @Test
+    public void testIgnoresKeysWithoutParameters() {
+        index.add(new ArgStorage());
+        index.remove(new ArgStorage(), storage);
+        Assert.assertTrue(index.get(null).isEmpty());
+    }
+
+    @Test
+    public void testNullFirstParameter() {
+        index.add(key(null, 1));
+        Assert.assertEquals(Collections.singletonList(key(null, 1)), index.get(null));
+    }
+
+    @Test
+    public void testIgnoresSingleParameters() {
+        index.add("a");
+        Assert.assertTrue(index.get("a").isEmpty());
+    }
+
+    private static Key2 key(Object a, Object b) {
+        return new Key2().set(a, b);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) pakoito 2016
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pacoworks.rxmemoization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+
+public class RemoteTierTest {
+    private final LoopbackRemoteTier tier = new LoopbackRemoteTier();
+
+    private static final Func1<Integer, Integer> IDENTITY = new Func1<Integer, Integer>() {
+        @Override
+        public Integer call(Integer value) {
+            return value;
+        }
+    };
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void testComputedOncePerCluster() {
+        final Func2<Integer, Integer, Integer> first = node("sum");
+        final Func2<Integer, Integer, Integer> second = node("sum");
+        Assert.assertEquals(3, first.call(1, 2).intValue());
+        Assert.assertEquals(3, second.call(1, 2).intValue());
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(3, tier.get("sum", Arrays.<Object> asList(1, 2)).toBlocking().single());
+    }
+
+    @Test
+    public void testRegionsAreSeparate() {
+        node("sum").call(1, 2);
+        node("other").call(1, 2);
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testInvalidationDropsLocalCopies() {
+        final Func2<Integer, Integer, Integer> first = node("sum");
+        final Func2<Integer, Integer, Integer> second = node("sum");
+        first.call(1, 2);
+        second.call(1, 2);
+        first.call(2, 2);
+        tier.invalidate("sum", Arrays.<Object> asList(1, 2)).subscribe();
+        Assert.assertEquals(1, ((MemoizationStats)first).size());
+        Assert.assertEquals(0, ((MemoizationStats)second).size());
+        second.call(1, 2);
+        first.call(1, 2);
+        Assert.assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testWithoutParameters() {
+        final Func0<Integer> function = new Func0<Integer>() {
+            @Override
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        };
+        final Func0<Integer> first = RxMemoization.builder().remoteTier(tier, "constant")
+                .memoize(function);
+        final Func0<Integer> second = RxMemoization.builder().remoteTier(tier, "constant")
+                .memoize(function);
+        Assert.assertEquals(1, first.call().intValue());
+        Assert.assertEquals(1, second.call().intValue());
+        tier.invalidate("constant", Collections.emptyList()).subscribe();
+        Assert.assertEquals(2, second.call().intValue());
+    }
+
+    @Test
+    public void testBatchesLookUpTogether() {
+        final Func1<Integer, Integer> first = batchedNode();
+        final Func1<Integer, Integer> second = batchedNode();
+        Assert.assertEquals(10, first.call(1).intValue());
+        Assert.assertEquals(10, second.call(1).intValue());
+        Assert.assertEquals(20, second.call(2).intValue());
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testInvalidatePublishes() {
+        final Func2<Integer, Integer, Integer> first = node("sum");
+        final Func2<Integer, Integer, Integer> second = node("sum");
+        first.call(1, 2);
+        second.call(1, 2);
+        ((MemoizationInvalidator)first).invalidate(1, 2);
+        Assert.assertEquals(0, ((MemoizationStats)second).size());
+        Assert.assertNull(tier.get("sum", Arrays.<Object> asList(1, 2)).toBlocking()
+                .firstOrDefault(null));
+        // Computed again instead of read back from the tier
+        first.call(1, 2);
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testInvalidateAllPublishes() {
+        final Func2<Integer, Integer, Integer> first = node("sum");
+        final Func2<Integer, Integer, Integer> second = node("sum");
+        first.call(1, 2);
+        first.call(2, 2);
+        second.call(1, 2);
+        ((MemoizationInvalidator)first).invalidateAll();
+        Assert.assertEquals(0, ((MemoizationStats)second).size());
+        first.call(1, 2);
+        first.call(2, 2);
+        Assert.assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void testInvalidatePrefixPublishes() {
+        final Func2<Integer, Integer, Integer> first = node("sum");
+        final Func2<Integer, Integer, Integer> indexed = RxMemoization.builder()
+                .remoteTier(tier, "sum").indexByFirstParameter()
+                .memoize(new Func2<Integer, Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer a, Integer b) {
+                        calls.incrementAndGet();
+                        return a + b;
+                    }
+                });
+        first.call(1, 2);
+        first.call(2, 2);
+        ((MemoizationInvalidator)first).invalidatePrefix(1);
+        first.call(1, 2);
+        first.call(2, 2);
+        Assert.assertEquals(3, calls.get());
+        indexed.call(2, 2);
+        ((MemoizationInvalidator)indexed).invalidatePrefix(2);
+        Assert.assertEquals(1, ((MemoizationStats)first).size());
+        indexed.call(2, 2);
+        Assert.assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void testWithoutParametersInvalidatePublishes() {
+        final Func0<Integer> function = RxMemoization.builder().remoteTier(tier, "constant")
+                .memoize(new Func0<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return calls.incrementAndGet();
+                    }
+                });
+        Assert.assertEquals(1, function.call().intValue());
+        ((MemoizationInvalidator)function).invalidate();
+        Assert.assertEquals(2, function.call().intValue());
+        ((MemoizationInvalidator)function).invalidateAll();
+        Assert.assertEquals(3, function.call().intValue());
+    }
+
+    @Test
+    public void testOffHeapLookedUpBeforeTier() {
+        final Func1<Integer, String> function = RxMemoization.builder().remoteTier(tier, "text")
+                .maximumSize(1).offHeap(1024, new Codec<String>() {
+                    @Override
+                    public byte[] encode(String value) {
+                        return value.getBytes();
+                    }
+
+                    @Override
+                    public String decode(byte[] bytes) {
+                        return new String(bytes);
+                    }
+                }).memoize(new Func1<Integer, String>() {
+                    @Override
+                    public String call(Integer value) {
+                        calls.incrementAndGet();
+                        return "local" + value;
+                    }
+                });
+        function.call(1);
+        // Demotes 1
+        function.call(2);
+        tier.put("text", Arrays.<Object> asList(1), "remote1").subscribe();
+        Assert.assertEquals("local1", function.call(1));
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExpireAfterWriteRejected() {
+        remoteBuilder().expireAfterWrite(1, TimeUnit.SECONDS).memoize(IDENTITY);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExpireAfterAccessRejected() {
+        remoteBuilder().expireAfterAccess(1, TimeUnit.SECONDS).memoize(IDENTITY);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRefreshAfterWriteRejected() {
+        remoteBuilder().refreshAfterWrite(1, TimeUnit.SECONDS).memoize(IDENTITY);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testObservablesRejected() {
+        RxMemoization.builder().remoteTier(tier, "observable")
+                .memoizeObservable(new Func1<Integer, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(Integer value) {
+                        return Observable.just(value);
+                    }
+                });
+    }
+
+    private MemoizationBuilder remoteBuilder() {
+        return RxMemoization.builder().remoteTier(tier, "identity");
+    }
+
+    private Func2<Integer, Integer, Integer> node(String region) {
+        return RxMemoization.builder().remoteTier(tier, region)
+                .memoize(new Func2<Integer, Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer a, Integer b) {
+                        calls.incrementAndGet();
+                        return a + b;
+                    }
+                });
+    }
+
+    private Func1<Integer, Integer> batchedNode() {
+        return RxMemoization.builder().remoteTier(tier, "batched")
+                .memoizeBatched(new Func1<Set<Integer>, Map<Integer, Integer>>() {
+                    @Override
+                    public Map<Integer, Integer> call(Set<Integer> keys) {
+                        calls.incrementAndGet();
+                        final Map<Integer, Integer> results = new HashMap<Integer, Integer>();
+                        for (Integer key : keys) {
+                            results.put(key, key * 10);
+                        }
+                        return results;
+                    }
+                }, 1, TimeUnit.MILLISECONDS, 1, Schedulers.immediate());
+    }
+}
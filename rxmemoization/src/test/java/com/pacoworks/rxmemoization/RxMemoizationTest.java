@@ -19,9 +19,15 @@ package com.pacoworks.rxmemoization;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import rx.Observable;
 import rx.functions.Action0;
@@ -37,7 +43,9 @@ import rx.functions.Func7;
 import rx.functions.Func8;
 import rx.functions.Func9;
 import rx.functions.FuncN;
+import rx.observers.TestSubscriber;
 import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
 
 public class RxMemoizationTest {
     private static final MyObject INSTANCE = new MyObject();
@@ -377,6 +385,1476 @@ public class RxMemoizationTest {
         Assert.assertEquals(4, count.get());
     }
 
+    @Test
+    public void testMemoize1Concurrent() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func1<Integer, MyObject> memoized = RxMemoization
+                .memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        count.incrementAndGet();
+                        sleep(50);
+                        return INSTANCES.get(integer);
+                    }
+                });
+        callConcurrently(new Action0() {
+            @Override
+            public void call() {
+                Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+                Assert.assertEquals(INSTANCES.get(2), memoized.call(2));
+            }
+        });
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoize2Concurrent() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func2<Integer, Integer, MyObject> memoized = RxMemoization
+                .memoize(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        sleep(50);
+                        return INSTANCES.get(integer + integer2);
+                    }
+                });
+        callConcurrently(new Action0() {
+            @Override
+            public void call() {
+                Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+                Assert.assertEquals(INSTANCES.get(1), memoized.call(1, 0));
+            }
+        });
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoizeNConcurrent() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final FuncN<MyObject> memoized = RxMemoization.memoize(new FuncN<MyObject>() {
+            @Override
+            public MyObject call(Object... args) {
+                count.incrementAndGet();
+                sleep(50);
+                return INSTANCES.get(args.length);
+            }
+        });
+        callConcurrently(new Action0() {
+            @Override
+            public void call() {
+                Assert.assertEquals(INSTANCES.get(3), memoized.call(0, 0, 0));
+            }
+        });
+        Assert.assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testMemoizeBounded() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func2<Integer, Integer, MyObject> memoized = RxMemoization.builder().maximumSize(2)
+                .evictionPolicy(EvictionPolicy.LRU)
+                .memoize(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(integer + integer2);
+                    }
+                });
+        // +1
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(0, 0));
+        // +1
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(0, 0));
+        // +1, evicts (0, 1)
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(1, 1));
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(0, 0));
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(1, 1));
+        // +1
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        Assert.assertEquals(4, count.get());
+    }
+
+    @Test
+    public void testMemoizeExpireAfterWrite() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        Func1<Integer, MyObject> memoized = RxMemoization.builder().ticker(scheduler)
+                .expireAfterWrite(10, TimeUnit.SECONDS).memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(integer);
+                    }
+                });
+        // +1
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+        // +1
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoizeExpireAfterAccess() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        Func2<Integer, Integer, MyObject> memoized = RxMemoization.builder().ticker(scheduler)
+                .expireAfterAccess(10, TimeUnit.SECONDS)
+                .memoize(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(integer + integer2);
+                    }
+                });
+        // +1
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        scheduler.advanceTimeBy(8, TimeUnit.SECONDS);
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        scheduler.advanceTimeBy(8, TimeUnit.SECONDS);
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        // +1
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoize0ExpireAfterWrite() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        Func0<MyObject> memoized = RxMemoization.builder().ticker(scheduler)
+                .expireAfterWrite(1, TimeUnit.MINUTES).memoize(new Func0<MyObject>() {
+                    @Override
+                    public MyObject call() {
+                        count.incrementAndGet();
+                        return INSTANCE;
+                    }
+                });
+        // +1
+        Assert.assertEquals(INSTANCE, memoized.call());
+        Assert.assertEquals(INSTANCE, memoized.call());
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+        // +1
+        Assert.assertEquals(INSTANCE, memoized.call());
+        Assert.assertEquals(INSTANCE, memoized.call());
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoizeRefreshAfterWrite() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        Func1<Integer, MyObject> memoized = RxMemoization.builder().ticker(scheduler)
+                .refreshAfterWrite(10, TimeUnit.SECONDS).refreshScheduler(scheduler)
+                .memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        return INSTANCES.get(integer + count.getAndIncrement());
+                    }
+                });
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        // Stale result while a single reload is scheduled
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+        Assert.assertEquals(1, count.get());
+        scheduler.triggerActions();
+        Assert.assertEquals(2, count.get());
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(1));
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(1));
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoize0RefreshKeepsResultOnError() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        Func0<MyObject> memoized = RxMemoization.builder().ticker(scheduler)
+                .refreshAfterWrite(10, TimeUnit.SECONDS).refreshScheduler(scheduler)
+                .memoize(new Func0<MyObject>() {
+                    @Override
+                    public MyObject call() {
+                        if (count.getAndIncrement() > 0) {
+                            throw new IllegalStateException("Backend down");
+                        }
+                        return INSTANCE;
+                    }
+                });
+        Assert.assertEquals(INSTANCE, memoized.call());
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        Assert.assertEquals(INSTANCE, memoized.call());
+        scheduler.triggerActions();
+        Assert.assertEquals(2, count.get());
+        Assert.assertEquals(INSTANCE, memoized.call());
+        scheduler.triggerActions();
+        Assert.assertEquals(3, count.get());
+    }
+
+    @Test
+    public void testMemoizeCacheFailures() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final AtomicInteger failures = new AtomicInteger(2);
+        final TestScheduler scheduler = new TestScheduler();
+        Func1<Integer, MyObject> memoized = RxMemoization.builder().ticker(scheduler)
+                .cacheFailures(1, 4, TimeUnit.SECONDS).memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        count.incrementAndGet();
+                        if (failures.getAndDecrement() > 0) {
+                            throw new IllegalStateException("Backend down");
+                        }
+                        return INSTANCES.get(integer);
+                    }
+                });
+        // +1, backs off 1 second
+        final IllegalStateException first = assertFails(memoized, 1);
+        Assert.assertSame(first, assertFails(memoized, 1));
+        Assert.assertEquals(1, count.get());
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        // +1, backs off 2 seconds
+        Assert.assertNotSame(first, assertFails(memoized, 1));
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertFails(memoized, 1);
+        Assert.assertEquals(2, count.get());
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        // +1
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1));
+        Assert.assertEquals(3, count.get());
+    }
+
+    @Test
+    public void testMemoizeCacheFailuresConcurrent() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        final Func1<Integer, MyObject> memoized = RxMemoization.builder().ticker(scheduler)
+                .cacheFailures(10, TimeUnit.SECONDS).memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        count.incrementAndGet();
+                        throw new IllegalStateException("Backend down");
+                    }
+                });
+        // +1
+        final IllegalStateException first = assertFails(memoized, 1);
+        final StackTraceElement[] stackTrace = first.getStackTrace();
+        callConcurrently(new Action0() {
+            @Override
+            public void call() {
+                // Every caller gets the same instance, unchanged
+                Assert.assertSame(first, assertFails(memoized, 1));
+            }
+        });
+        Assert.assertEquals(1, count.get());
+        Assert.assertArrayEquals(stackTrace, first.getStackTrace());
+        Assert.assertNull(first.getCause());
+    }
+
+    @Test
+    public void testMemoize0CacheFailures() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        Func0<MyObject> memoized = RxMemoization.builder().ticker(scheduler)
+                .cacheFailures(10, TimeUnit.SECONDS).memoize(new Func0<MyObject>() {
+                    @Override
+                    public MyObject call() {
+                        if (count.getAndIncrement() == 0) {
+                            throw new IllegalStateException("Backend down");
+                        }
+                        return INSTANCE;
+                    }
+                });
+        for (int i = 0; i < 3; i++) {
+            try {
+                memoized.call();
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                // Cached for 10 seconds
+            }
+        }
+        Assert.assertEquals(1, count.get());
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        Assert.assertEquals(INSTANCE, memoized.call());
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoizeObservableSharesSubscription() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        Func1<Integer, Observable<MyObject>> memoized = RxMemoization
+                .memoizeObservable(new Func1<Integer, Observable<MyObject>>() {
+                    @Override
+                    public Observable<MyObject> call(final Integer integer) {
+                        return Observable.defer(new Func0<Observable<MyObject>>() {
+                            @Override
+                            public Observable<MyObject> call() {
+                                count.incrementAndGet();
+                                return Observable.just(INSTANCES.get(integer))
+                                        .delay(1, TimeUnit.SECONDS, scheduler);
+                            }
+                        });
+                    }
+                });
+        TestSubscriber<MyObject> first = new TestSubscriber<MyObject>();
+        TestSubscriber<MyObject> second = new TestSubscriber<MyObject>();
+        memoized.call(1).subscribe(first);
+        memoized.call(1).subscribe(second);
+        Assert.assertEquals(1, count.get());
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        first.assertValue(INSTANCES.get(1));
+        first.assertCompleted();
+        second.assertValue(INSTANCES.get(1));
+        second.assertCompleted();
+        TestSubscriber<MyObject> third = new TestSubscriber<MyObject>();
+        memoized.call(1).subscribe(third);
+        third.assertValue(INSTANCES.get(1));
+        third.assertCompleted();
+        Assert.assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testMemoizeObservableDoesNotCacheErrors() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func2<Integer, Integer, Observable<MyObject>> memoized = RxMemoization
+                .memoizeObservable(new Func2<Integer, Integer, Observable<MyObject>>() {
+                    @Override
+                    public Observable<MyObject> call(Integer integer, Integer integer2) {
+                        if (count.getAndIncrement() == 0) {
+                            return Observable.error(new IllegalStateException("Backend down"));
+                        }
+                        return Observable.just(INSTANCES.get(integer + integer2));
+                    }
+                });
+        TestSubscriber<MyObject> failed = new TestSubscriber<MyObject>();
+        memoized.call(0, 1).subscribe(failed);
+        failed.assertError(IllegalStateException.class);
+        TestSubscriber<MyObject> retried = new TestSubscriber<MyObject>();
+        memoized.call(0, 1).subscribe(retried);
+        retried.assertValue(INSTANCES.get(1));
+        TestSubscriber<MyObject> cached = new TestSubscriber<MyObject>();
+        memoized.call(0, 1).subscribe(cached);
+        cached.assertValue(INSTANCES.get(1));
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoizeAsyncSharesLoad() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        Func1<Integer, Observable<MyObject>> memoized = RxMemoization.builder()
+                .asyncScheduler(scheduler).memoizeAsync(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(integer);
+                    }
+                });
+        TestSubscriber<MyObject> first = new TestSubscriber<MyObject>();
+        TestSubscriber<MyObject> second = new TestSubscriber<MyObject>();
+        memoized.call(1).subscribe(first);
+        memoized.call(1).subscribe(second);
+        Assert.assertEquals(0, count.get());
+        first.assertNoValues();
+        scheduler.triggerActions();
+        Assert.assertEquals(1, count.get());
+        first.assertValue(INSTANCES.get(1));
+        second.assertValue(INSTANCES.get(1));
+        TestSubscriber<MyObject> hit = new TestSubscriber<MyObject>();
+        memoized.call(1).subscribe(hit);
+        hit.assertValue(INSTANCES.get(1));
+        hit.assertCompleted();
+        Assert.assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testMemoizeAsyncUnsubscribeKeepsLoad() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final TestScheduler scheduler = new TestScheduler();
+        Func2<Integer, Integer, Observable<MyObject>> memoized = RxMemoization.builder()
+                .asyncScheduler(scheduler)
+                .memoizeAsync(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(integer + integer2);
+                    }
+                });
+        memoized.call(1, 2).subscribe(new TestSubscriber<MyObject>()).unsubscribe();
+        scheduler.triggerActions();
+        Assert.assertEquals(1, count.get());
+        TestSubscriber<MyObject> hit = new TestSubscriber<MyObject>();
+        memoized.call(1, 2).subscribe(hit);
+        hit.assertValue(INSTANCES.get(3));
+        Assert.assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testMemoizeAsyncDoesNotCacheErrors() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func0<Observable<MyObject>> memoized = RxMemoization.builder()
+                .asyncScheduler(Schedulers.immediate()).memoizeAsync(new Func0<MyObject>() {
+                    @Override
+                    public MyObject call() {
+                        if (count.getAndIncrement() == 0) {
+                            throw new IllegalStateException("Backend down");
+                        }
+                        return INSTANCES.get(0);
+                    }
+                });
+        TestSubscriber<MyObject> failed = new TestSubscriber<MyObject>();
+        memoized.call().subscribe(failed);
+        failed.assertError(IllegalStateException.class);
+        TestSubscriber<MyObject> retried = new TestSubscriber<MyObject>();
+        memoized.call().subscribe(retried);
+        retried.assertValue(INSTANCES.get(0));
+        Assert.assertEquals(INSTANCES.get(0), memoized.call().toBlocking().single());
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoizeAsyncRunsOnScheduler() {
+        final Thread caller = Thread.currentThread();
+        FuncN<Observable<Boolean>> memoized = RxMemoization.memoizeAsync(new FuncN<Boolean>() {
+            @Override
+            public Boolean call(Object... args) {
+                return Thread.currentThread() != caller;
+            }
+        });
+        Assert.assertTrue(memoized.call(1, 2, 3).toBlocking().single());
+    }
+
+    @Test
+    public void testMemoizeInt() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Integer, MyObject> memoized = RxMemoization.memoizeInt(new Func1<Integer, MyObject>() {
+            @Override
+            public MyObject call(Integer integer) {
+                count.incrementAndGet();
+                return INSTANCES.get(Math.abs(integer));
+            }
+        });
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(0));
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(0));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(-1));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(-1));
+        Assert.assertEquals(INSTANCES.get(30), memoized.call(30));
+        Assert.assertEquals(INSTANCES.get(30), memoized.call(30));
+        Assert.assertEquals(3, count.get());
+    }
+
+    @Test
+    public void testMemoizeIntRange() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Integer, MyObject> memoized = RxMemoization.memoizeInt(new Func1<Integer, MyObject>() {
+            @Override
+            public MyObject call(Integer integer) {
+                count.incrementAndGet();
+                return INSTANCES.get(integer + 10);
+            }
+        }, -10, 10);
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(-10));
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(-10));
+        Assert.assertEquals(INSTANCES.get(19), memoized.call(9));
+        Assert.assertEquals(INSTANCES.get(19), memoized.call(9));
+        Assert.assertEquals(2, count.get());
+        try {
+            memoized.call(10);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(2, count.get());
+        }
+    }
+
+    @Test
+    public void testMemoizeIntRangeTooLarge() {
+        final Func1<Integer, Integer> identity = new Func1<Integer, Integer>() {
+            @Override
+            public Integer call(Integer integer) {
+                return integer;
+            }
+        };
+        try {
+            RxMemoization.memoizeInt(identity, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected, the range doesn't fit in an int
+        }
+        try {
+            RxMemoization.memoizeInt(identity, 0, Integer.MAX_VALUE);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected, the range is over the array limit
+        }
+    }
+
+    @Test
+    public void testMemoizeIntPair() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func2<Integer, Integer, MyObject> memoized = RxMemoization
+                .memoizeInt(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(Math.abs(integer - integer2));
+                    }
+                });
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1, 0));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1, 0));
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(-1, 1));
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(-1, 1));
+        Assert.assertEquals(3, count.get());
+    }
+
+    @Test
+    public void testMemoizeLong() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Long, MyObject> memoized = RxMemoization.memoizeLong(new Func1<Long, MyObject>() {
+            @Override
+            public MyObject call(Long aLong) {
+                count.incrementAndGet();
+                return INSTANCES.get((int)(aLong % 1000));
+            }
+        });
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1L));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1L));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1000000000001L));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(1000000000001L));
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testMemoizeDouble() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Double, MyObject> memoized = RxMemoization.memoizeDouble(new Func1<Double, MyObject>() {
+            @Override
+            public MyObject call(Double aDouble) {
+                count.incrementAndGet();
+                return INSTANCES.get((int)Math.abs(aDouble * 10));
+            }
+        });
+        Assert.assertEquals(INSTANCES.get(5), memoized.call(0.5));
+        Assert.assertEquals(INSTANCES.get(5), memoized.call(0.5));
+        Assert.assertEquals(INSTANCES.get(5), memoized.call(-0.5));
+        Assert.assertEquals(INSTANCES.get(5), memoized.call(-0.5));
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testInvalidateMemoizeInt() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Integer, MyObject> memoized = RxMemoization.memoizeInt(new Func1<Integer, MyObject>() {
+            @Override
+            public MyObject call(Integer integer) {
+                count.incrementAndGet();
+                return INSTANCES.get(integer);
+            }
+        });
+        memoized.call(3);
+        memoized.call(4);
+        ((MemoizationInvalidator)memoized).invalidate(3);
+        Assert.assertEquals(1, ((MemoizationStats)memoized).size());
+        Assert.assertEquals(INSTANCES.get(3), memoized.call(3));
+        Assert.assertEquals(INSTANCES.get(4), memoized.call(4));
+        Assert.assertEquals(3, count.get());
+        ((MemoizationInvalidator)memoized).invalidatePrefix(4);
+        Assert.assertEquals(1, ((MemoizationStats)memoized).size());
+    }
+
+    @Test
+    public void testInvalidateMemoizeIntPair() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func2<Integer, Integer, MyObject> memoized = RxMemoization
+                .memoizeInt(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(Math.abs(integer + integer2));
+                    }
+                });
+        memoized.call(1, 2);
+        memoized.call(1, -3);
+        memoized.call(2, 2);
+        memoized.call(-1, 2);
+        ((MemoizationInvalidator)memoized).invalidate(1, 2);
+        Assert.assertEquals(3, ((MemoizationStats)memoized).size());
+        ((MemoizationInvalidator)memoized).invalidatePrefix(1);
+        Assert.assertEquals(2, ((MemoizationStats)memoized).size());
+        ((MemoizationInvalidator)memoized).invalidatePrefix(-1);
+        Assert.assertEquals(1, ((MemoizationStats)memoized).size());
+        memoized.call(2, 2);
+        Assert.assertEquals(4, count.get());
+        memoized.call(1, -3);
+        Assert.assertEquals(5, count.get());
+    }
+
+    @Test
+    public void testInvalidateMemoizeLong() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Long, MyObject> memoized = RxMemoization.memoizeLong(new Func1<Long, MyObject>() {
+            @Override
+            public MyObject call(Long aLong) {
+                count.incrementAndGet();
+                return INSTANCES.get((int)aLong.longValue());
+            }
+        });
+        memoized.call(3L);
+        memoized.call(4L);
+        ((MemoizationInvalidator)memoized).invalidate(3L);
+        ((MemoizationInvalidator)memoized).invalidatePrefix(4L);
+        Assert.assertEquals(0, ((MemoizationStats)memoized).size());
+        memoized.call(3L);
+        Assert.assertEquals(3, count.get());
+    }
+
+    @Test
+    public void testInvalidateMemoizeDouble() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Double, MyObject> memoized = RxMemoization.memoizeDouble(new Func1<Double, MyObject>() {
+            @Override
+            public MyObject call(Double aDouble) {
+                count.incrementAndGet();
+                return INSTANCES.get((int)(aDouble * 10));
+            }
+        });
+        memoized.call(1.5);
+        memoized.call(2.5);
+        ((MemoizationInvalidator)memoized).invalidate(1.5);
+        Assert.assertEquals(1, ((MemoizationStats)memoized).size());
+        ((MemoizationInvalidator)memoized).invalidatePrefix(2.5);
+        Assert.assertEquals(0, ((MemoizationStats)memoized).size());
+        memoized.call(1.5);
+        Assert.assertEquals(3, count.get());
+    }
+
+    @Test
+    public void testPrimitiveMemoizersRejectNull() {
+        final Func2<Integer, Integer, Integer> pair = RxMemoization
+                .memoizeInt(new Func2<Integer, Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer integer, Integer integer2) {
+                        return integer + integer2;
+                    }
+                });
+        try {
+            pair.call(1, null);
+            Assert.fail();
+        } catch (NullPointerException e) {
+            Assert.assertEquals("b", e.getMessage());
+        }
+        final Func1<Long, Long> single = RxMemoization.memoizeLong(new Func1<Long, Long>() {
+            @Override
+            public Long call(Long aLong) {
+                return aLong;
+            }
+        });
+        try {
+            single.call(null);
+            Assert.fail();
+        } catch (NullPointerException e) {
+            Assert.assertEquals("a", e.getMessage());
+        }
+        Assert.assertEquals(0, ((MemoizationStats)pair).size());
+        Assert.assertEquals(0, ((MemoizationStats)single).size());
+    }
+
+    @Test
+    public void testMemoizeNullResults() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func0<MyObject> memoized0 = RxMemoization.memoize(new Func0<MyObject>() {
+            @Override
+            public MyObject call() {
+                count.incrementAndGet();
+                return null;
+            }
+        });
+        Func1<Integer, MyObject> memoized1 = RxMemoization.memoize(new Func1<Integer, MyObject>() {
+            @Override
+            public MyObject call(Integer integer) {
+                count.incrementAndGet();
+                return null;
+            }
+        });
+        Func2<Integer, Integer, MyObject> memoized2 = RxMemoization.builder().maximumSize(10)
+                .memoize(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        return null;
+                    }
+                });
+        Func1<Long, MyObject> memoizedLong = RxMemoization.memoizeLong(new Func1<Long, MyObject>() {
+            @Override
+            public MyObject call(Long aLong) {
+                count.incrementAndGet();
+                return null;
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            // +1
+            Assert.assertNull(memoized0.call());
+            // +1
+            Assert.assertNull(memoized1.call(0));
+            // +1
+            Assert.assertNull(memoized2.call(0, 1));
+            // +1
+            Assert.assertNull(memoizedLong.call(0L));
+        }
+        Assert.assertEquals(4, count.get());
+    }
+
+    @Test
+    public void testMemoizeNullArguments() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Integer, MyObject> memoized1 = RxMemoization.memoize(new Func1<Integer, MyObject>() {
+            @Override
+            public MyObject call(Integer integer) {
+                count.incrementAndGet();
+                return null == integer ? INSTANCE : INSTANCES.get(integer);
+            }
+        });
+        FuncN<MyObject> memoizedN = RxMemoization.memoize(new FuncN<MyObject>() {
+            @Override
+            public MyObject call(Object... args) {
+                count.incrementAndGet();
+                return INSTANCE;
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            // +1
+            Assert.assertEquals(INSTANCE, memoized1.call(null));
+            // +1
+            Assert.assertEquals(INSTANCES.get(0), memoized1.call(0));
+            // +1
+            Assert.assertEquals(INSTANCE, memoizedN.call(null, 1, null));
+        }
+        Assert.assertEquals(3, count.get());
+    }
+
+    @Test
+    public void testMemoizeOffHeap() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Integer, String> memoized = RxMemoization.builder().maximumSize(2)
+                .evictionPolicy(EvictionPolicy.LRU)
+                .offHeap(1024, new Codec<String>() {
+                    @Override
+                    public byte[] encode(String value) {
+                        return value.getBytes();
+                    }
+
+                    @Override
+                    public String decode(byte[] bytes) {
+                        return new String(bytes);
+                    }
+                }).memoize(new Func1<Integer, String>() {
+                    @Override
+                    public String call(Integer integer) {
+                        count.incrementAndGet();
+                        return String.valueOf(integer);
+                    }
+                });
+        for (int i = 0; i < 10; i++) {
+            // +1 each
+            Assert.assertEquals(String.valueOf(i), memoized.call(i));
+        }
+        Assert.assertEquals(10, ((MemoizationStats)memoized).size());
+        for (int i = 0; i < 10; i++) {
+            // Promoted from off-heap
+            Assert.assertEquals(String.valueOf(i), memoized.call(i));
+        }
+        Assert.assertEquals(10, count.get());
+    }
+
+    @Test
+    public void testInvalidateOffHeap() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func2<Integer, Integer, String> memoized = offHeapBuilder()
+                .memoize(new Func2<Integer, Integer, String>() {
+                    @Override
+                    public String call(Integer integer, Integer integer2) {
+                        return integer + ":" + integer2 + ":" + count.incrementAndGet();
+                    }
+                });
+        Assert.assertEquals("1:1:1", memoized.call(1, 1));
+        Assert.assertEquals("1:2:2", memoized.call(1, 2));
+        Assert.assertEquals("2:1:3", memoized.call(2, 1));
+        // Only 2:1 is left on the heap
+        Assert.assertEquals(3, ((MemoizationStats)memoized).size());
+        ((MemoizationInvalidator)memoized).invalidate(1, 1);
+        Assert.assertEquals(2, ((MemoizationStats)memoized).size());
+        // Demotes 2:1
+        Assert.assertEquals("1:1:4", memoized.call(1, 1));
+        ((MemoizationInvalidator)memoized).invalidatePrefix(1);
+        Assert.assertEquals(1, ((MemoizationStats)memoized).size());
+        Assert.assertEquals("1:2:5", memoized.call(1, 2));
+        ((MemoizationInvalidator)memoized).invalidateAll();
+        Assert.assertEquals(0, ((MemoizationStats)memoized).size());
+        Assert.assertEquals("2:1:6", memoized.call(2, 1));
+    }
+
+    @Test
+    public void testOffHeapEncodesOutsideEvictionLock() throws InterruptedException {
+        final AtomicReference<Func1<Integer, String>> memoized =
+                new AtomicReference<Func1<Integer, String>>();
+        final AtomicInteger encoded = new AtomicInteger(0);
+        final AtomicBoolean writerBlocked = new AtomicBoolean(false);
+        memoized.set(RxMemoization.builder().maximumSize(1).offHeap(1024, new Codec<String>() {
+            @Override
+            public byte[] encode(String value) {
+                if (encoded.getAndIncrement() == 0) {
+                    // Another writer needs the eviction lock while this result is encoded
+                    final Thread writer = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            memoized.get().call(3);
+                        }
+                    });
+                    writer.start();
+                    try {
+                        writer.join(5000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    writerBlocked.set(writer.isAlive());
+                }
+                return value.getBytes();
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes);
+            }
+        }).memoize(new Func1<Integer, String>() {
+            @Override
+            public String call(Integer integer) {
+                return String.valueOf(integer);
+            }
+        }));
+        memoized.get().call(1);
+        // Demotes 1
+        memoized.get().call(2);
+        Assert.assertTrue(encoded.get() > 0);
+        Assert.assertFalse(writerBlocked.get());
+        Assert.assertEquals("1", memoized.get().call(1));
+    }
+
+    @Test
+    public void testMemoizeBatchedConcurrent() {
+        final AtomicInteger batches = new AtomicInteger(0);
+        final AtomicInteger keys = new AtomicInteger(0);
+        final Func1<Integer, MyObject> memoized = RxMemoization.memoizeBatched(
+                new Func1<Set<Integer>, Map<Integer, MyObject>>() {
+                    @Override
+                    public Map<Integer, MyObject> call(Set<Integer> integers) {
+                        batches.incrementAndGet();
+                        keys.addAndGet(integers.size());
+                        final Map<Integer, MyObject> results = new HashMap<Integer, MyObject>();
+                        for (Integer integer : integers) {
+                            results.put(integer, INSTANCES.get(integer));
+                        }
+                        return results;
+                    }
+                }, 1, TimeUnit.SECONDS, 100);
+        // One thread per call, so every miss joins the batch within the window
+        Observable.range(0, 100).flatMap(new Func1<Integer, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(Integer integer) {
+                return Observable.just(integer % 10).subscribeOn(Schedulers.newThread())
+                        .doOnNext(new Action1<Integer>() {
+                            @Override
+                            public void call(Integer key) {
+                                Assert.assertEquals(INSTANCES.get(key), memoized.call(key));
+                            }
+                        });
+            }
+        }).toBlocking().last();
+        Assert.assertEquals(1, batches.get());
+        Assert.assertEquals(10, keys.get());
+        Assert.assertEquals(INSTANCES.get(5), memoized.call(5));
+        Assert.assertEquals(1, batches.get());
+    }
+
+    @Test
+    public void testMemoizeBatchedMaxSize() {
+        final AtomicInteger batches = new AtomicInteger(0);
+        final Func1<Integer, MyObject> memoized = RxMemoization.memoizeBatched(
+                new Func1<Set<Integer>, Map<Integer, MyObject>>() {
+                    @Override
+                    public Map<Integer, MyObject> call(Set<Integer> integers) {
+                        batches.incrementAndGet();
+                        if (integers.contains(-1)) {
+                            throw new IllegalArgumentException();
+                        }
+                        // Odd numbers are not found
+                        final Map<Integer, MyObject> results = new HashMap<Integer, MyObject>();
+                        for (Integer integer : integers) {
+                            if (integer % 2 == 0) {
+                                results.put(integer, INSTANCES.get(integer));
+                            }
+                        }
+                        return results;
+                    }
+                }, 1, TimeUnit.HOURS, 1);
+        // +1
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(2));
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(2));
+        // +1
+        Assert.assertNull(memoized.call(3));
+        Assert.assertNull(memoized.call(3));
+        Assert.assertEquals(2, batches.get());
+        for (int i = 0; i < 2; i++) {
+            try {
+                // +1
+                memoized.call(-1);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                // Errors are not cached
+            }
+        }
+        Assert.assertEquals(4, batches.get());
+    }
+
+    @Test
+    public void testMemoizeRecursive() {
+        final AtomicInteger calls = new AtomicInteger(0);
+        final Func1<Integer, Long> fibonacci = RxMemoization.memoizeRecursive(
+                new Func2<Func1<Integer, Long>, Integer, Long>() {
+                    @Override
+                    public Long call(Func1<Integer, Long> self, Integer n) {
+                        calls.incrementAndGet();
+                        return n < 2 ? n : self.call(n - 1) + self.call(n - 2);
+                    }
+                });
+        Assert.assertEquals(2880067194370816120L, fibonacci.call(90).longValue());
+        Assert.assertEquals(91, calls.get());
+        Assert.assertEquals(55L, fibonacci.call(10).longValue());
+        Assert.assertEquals(91, calls.get());
+    }
+
+    @Test
+    public void testMemoizeRecursiveArity() {
+        final String from = "kitten sitting on the mat";
+        final String to = "sitting kitten on a mat";
+        final AtomicInteger calls = new AtomicInteger(0);
+        final Func2<Integer, Integer, Integer> distance = RxMemoization.memoizeRecursive(
+                new Func3<Func2<Integer, Integer, Integer>, Integer, Integer, Integer>() {
+                    @Override
+                    public Integer call(Func2<Integer, Integer, Integer> self, Integer i,
+                            Integer j) {
+                        calls.incrementAndGet();
+                        if (i == 0 || j == 0) {
+                            return i + j;
+                        }
+                        final int cost = from.charAt(i - 1) == to.charAt(j - 1) ? 0 : 1;
+                        return Math.min(self.call(i - 1, j - 1) + cost,
+                                Math.min(self.call(i - 1, j), self.call(i, j - 1)) + 1);
+                    }
+                });
+        Assert.assertEquals(9, distance.call(from.length(), to.length()).intValue());
+        Assert.assertTrue(calls.get() <= (from.length() + 1) * (to.length() + 1));
+        final Func3<Integer, Integer, Boolean, Long> paths = RxMemoization.memoizeRecursive(
+                new Func4<Func3<Integer, Integer, Boolean, Long>, Integer, Integer, Boolean,
+                        Long>() {
+                    @Override
+                    public Long call(Func3<Integer, Integer, Boolean, Long> self, Integer x,
+                            Integer y, Boolean canDiagonal) {
+                        if (x == 0 && y == 0) {
+                            return 1L;
+                        }
+                        long count = 0;
+                        if (x > 0) {
+                            count += self.call(x - 1, y, canDiagonal);
+                        }
+                        if (y > 0) {
+                            count += self.call(x, y - 1, canDiagonal);
+                        }
+                        if (canDiagonal && x > 0 && y > 0) {
+                            count += self.call(x - 1, y - 1, canDiagonal);
+                        }
+                        return count;
+                    }
+                });
+        Assert.assertEquals(6, paths.call(2, 2, false).longValue());
+        Assert.assertEquals(13, paths.call(2, 2, true).longValue());
+        Assert.assertEquals(137846528820L, paths.call(20, 20, false).longValue());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMemoizeRecursiveSameParameters() {
+        RxMemoization.memoizeRecursive(new Func2<Func1<Integer, Integer>, Integer, Integer>() {
+            @Override
+            public Integer call(Func1<Integer, Integer> self, Integer n) {
+                return self.call(n);
+            }
+        }).call(1);
+    }
+
+    @Test
+    public void testMemoizeStats() {
+        Func2<Integer, Integer, MyObject> memoized = RxMemoization.builder().maximumSize(2)
+                .evictionPolicy(EvictionPolicy.LRU).recordStats()
+                .memoize(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        sleep(1);
+                        return INSTANCES.get(integer + integer2);
+                    }
+                });
+        memoized.call(0, 0);
+        memoized.call(0, 0);
+        memoized.call(0, 1);
+        memoized.call(0, 0);
+        // Evicts (0, 1)
+        memoized.call(1, 1);
+        final MemoizationStats stats = (MemoizationStats)memoized;
+        Assert.assertEquals(2, stats.hitCount());
+        Assert.assertEquals(3, stats.missCount());
+        Assert.assertEquals(3, stats.loadCount());
+        Assert.assertTrue(stats.totalLoadTime() >= TimeUnit.MILLISECONDS.toNanos(3));
+        Assert.assertEquals(1, stats.evictionCount());
+        Assert.assertEquals(2, stats.size());
+    }
+
+    @Test
+    public void testMemoizeStatsDisabled() {
+        Func1<Integer, MyObject> memoized = RxMemoization.memoize(new Func1<Integer, MyObject>() {
+            @Override
+            public MyObject call(Integer integer) {
+                return INSTANCES.get(integer);
+            }
+        });
+        memoized.call(0);
+        memoized.call(0);
+        memoized.call(1);
+        final MemoizationStats stats = (MemoizationStats)memoized;
+        Assert.assertEquals(0, stats.hitCount());
+        Assert.assertEquals(0, stats.missCount());
+        Assert.assertEquals(0, stats.loadCount());
+        Assert.assertEquals(2, stats.size());
+    }
+
+    @Test
+    public void testMemoizeWeakKeys() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func2<Object, Object, Integer> memoized = RxMemoization.builder().weakKeys()
+                .memoize(new Func2<Object, Object, Integer>() {
+                    @Override
+                    public Integer call(Object o, Object o2) {
+                        return count.incrementAndGet();
+                    }
+                });
+        final String key = new String("key");
+        // +1
+        Assert.assertEquals(1, memoized.call(key, null).intValue());
+        Assert.assertEquals(1, memoized.call(key, null).intValue());
+        // +1, equal but not the same parameter
+        Assert.assertEquals(2, memoized.call(new String("key"), null).intValue());
+        Assert.assertEquals(2, count.get());
+        final MemoizationStats stats = (MemoizationStats)memoized;
+        for (int i = 0; i < 50 && stats.size() > 1; i++) {
+            System.gc();
+            sleep(10);
+        }
+        Assert.assertEquals(1, stats.size());
+        Assert.assertEquals(1, memoized.call(key, null).intValue());
+    }
+
+    @Test
+    public void testMemoizeSoftValues() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<Integer, MyObject> memoized = RxMemoization.builder().softValues()
+                .memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        count.incrementAndGet();
+                        return new MyObject();
+                    }
+                });
+        final MyObject first = memoized.call(1);
+        Assert.assertSame(first, memoized.call(1));
+        Assert.assertNotSame(first, memoized.call(2));
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMemoizeReferencesWithPolicy() {
+        RxMemoization.builder().softValues().maximumSize(10)
+                .memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        return INSTANCE;
+                    }
+                });
+    }
+
+    @Test
+    public void testMemoizeThreadLocalCache() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func2<Integer, Integer, MyObject> memoized = RxMemoization.builder().maximumSize(2)
+                .evictionPolicy(EvictionPolicy.LRU).threadLocalCache(16).recordStats()
+                .memoize(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(integer + integer2);
+                    }
+                });
+        // +1
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(0, 0));
+        // +1
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        // Read from the storage, then from the thread
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(0, 0));
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(0, 0));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        // +1, evicts (0, 0)
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(1, 1));
+        // +1
+        Assert.assertEquals(INSTANCES.get(0), memoized.call(0, 0));
+        Assert.assertEquals(4, count.get());
+        Assert.assertEquals(4, ((MemoizationStats)memoized).hitCount());
+    }
+
+    @Test
+    public void testMemoizeThreadLocalCacheConcurrent() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final Func1<Integer, MyObject> memoized = RxMemoization.builder().threadLocalCache(16)
+                .memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(integer);
+                    }
+                });
+        final AtomicInteger calls = new AtomicInteger(0);
+        callConcurrently(new Action0() {
+            @Override
+            public void call() {
+                for (int i = 0; i < 100; i++) {
+                    final int key = calls.getAndIncrement() % 10;
+                    Assert.assertEquals(INSTANCES.get(key), memoized.call(key));
+                }
+            }
+        });
+        Assert.assertEquals(10, count.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMemoizeThreadLocalCacheWithExpiration() {
+        RxMemoization.builder().threadLocalCache(16).expireAfterWrite(1, TimeUnit.SECONDS)
+                .memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        return INSTANCE;
+                    }
+                });
+    }
+
+    @Test
+    public void testInvalidate() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func2<Integer, Integer, MyObject> memoized = RxMemoization
+                .memoize(new Func2<Integer, Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer, Integer integer2) {
+                        count.incrementAndGet();
+                        return INSTANCES.get(integer + integer2);
+                    }
+                });
+        // +2
+        memoized.call(0, 1);
+        memoized.call(1, 1);
+        final MemoizationInvalidator invalidator = (MemoizationInvalidator)memoized;
+        invalidator.invalidate(0, 1);
+        Assert.assertEquals(1, ((MemoizationStats)memoized).size());
+        // +1
+        Assert.assertEquals(INSTANCES.get(1), memoized.call(0, 1));
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(1, 1));
+        invalidator.invalidateAll();
+        Assert.assertEquals(0, ((MemoizationStats)memoized).size());
+        // +1
+        Assert.assertEquals(INSTANCES.get(2), memoized.call(1, 1));
+        Assert.assertEquals(4, count.get());
+    }
+
+    @Test
+    public void testInvalidate0() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func0<MyObject> memoized = RxMemoization.memoize(new Func0<MyObject>() {
+            @Override
+            public MyObject call() {
+                count.incrementAndGet();
+                return INSTANCE;
+            }
+        });
+        memoized.call();
+        ((MemoizationInvalidator)memoized).invalidate();
+        memoized.call();
+        memoized.call();
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testInvalidatePrefix() {
+        for (MemoizationBuilder builder : new MemoizationBuilder[] {
+                RxMemoization.builder(), RxMemoization.builder().indexByFirstParameter(),
+                RxMemoization.builder().indexByFirstParameter().maximumSize(100)
+        }) {
+            final AtomicInteger count = new AtomicInteger(0);
+            Func3<String, Integer, Integer, MyObject> memoized = builder
+                    .memoize(new Func3<String, Integer, Integer, MyObject>() {
+                        @Override
+                        public MyObject call(String tenant, Integer integer, Integer integer2) {
+                            count.incrementAndGet();
+                            return INSTANCES.get(integer + integer2);
+                        }
+                    });
+            for (String tenant : new String[] {
+                    "a", "b", null
+            }) {
+                for (int i = 0; i < 3; i++) {
+                    memoized.call(tenant, i, i);
+                }
+            }
+            final MemoizationInvalidator invalidator = (MemoizationInvalidator)memoized;
+            invalidator.invalidatePrefix("a", 1);
+            Assert.assertEquals(8, ((MemoizationStats)memoized).size());
+            invalidator.invalidatePrefix("a");
+            Assert.assertEquals(6, ((MemoizationStats)memoized).size());
+            invalidator.invalidatePrefix((Object)null);
+            Assert.assertEquals(3, ((MemoizationStats)memoized).size());
+            // +1
+            memoized.call("a", 1, 1);
+            memoized.call("b", 1, 1);
+            Assert.assertEquals(10, count.get());
+            invalidator.invalidatePrefix("b", 1, 1);
+            Assert.assertEquals(3, ((MemoizationStats)memoized).size());
+        }
+    }
+
+    @Test
+    public void testInvalidatePrefixWithoutParameters() {
+        final AtomicInteger count = new AtomicInteger(0);
+        FuncN<Integer> memoized = RxMemoization.builder().indexByFirstParameter().maximumSize(1)
+                .memoize(new FuncN<Integer>() {
+                    @Override
+                    public Integer call(Object... args) {
+                        count.incrementAndGet();
+                        return args.length;
+                    }
+                });
+        // +1
+        Assert.assertEquals(0, memoized.call().intValue());
+        Assert.assertEquals(0, memoized.call().intValue());
+        // +1, evicts the call without parameters
+        Assert.assertEquals(1, memoized.call("a").intValue());
+        ((MemoizationInvalidator)memoized).invalidatePrefix("a");
+        Assert.assertEquals(0, ((MemoizationStats)memoized).size());
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testInvalidateWhileLoading() {
+        final AtomicInteger count = new AtomicInteger(0);
+        final AtomicReference<Func1<Integer, Integer>> memoized =
+                new AtomicReference<Func1<Integer, Integer>>();
+        memoized.set(RxMemoization.memoize(new Func1<Integer, Integer>() {
+            @Override
+            public Integer call(Integer integer) {
+                if (count.getAndIncrement() == 0) {
+                    ((MemoizationInvalidator)memoized.get()).invalidate(integer);
+                }
+                return integer;
+            }
+        }));
+        // The caller still gets the result, but it isn't stored
+        Assert.assertEquals(1, memoized.get().call(1).intValue());
+        Assert.assertEquals(0, ((MemoizationStats)memoized.get()).size());
+        Assert.assertEquals(1, memoized.get().call(1).intValue());
+        Assert.assertEquals(1, memoized.get().call(1).intValue());
+        Assert.assertEquals(2, count.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidateWrongArity() {
+        ((MemoizationInvalidator)RxMemoization.memoize(new Func1<Integer, Integer>() {
+            @Override
+            public Integer call(Integer integer) {
+                return integer;
+            }
+        })).invalidate(1, 2);
+    }
+
+    @Test
+    public void testKeyEquivalenceIdentity() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func1<List<Integer>, Integer> memoized = RxMemoization.builder()
+                .keyEquivalence(Equivalence.IDENTITY)
+                .memoize(new Func1<List<Integer>, Integer>() {
+                    @Override
+                    public Integer call(List<Integer> integers) {
+                        count.incrementAndGet();
+                        return null == integers ? null : integers.size();
+                    }
+                });
+        final List<Integer> list = Arrays.asList(1, 2, 3);
+        // +1
+        Assert.assertEquals(3, memoized.call(list).intValue());
+        Assert.assertEquals(3, memoized.call(list).intValue());
+        // +1, equal but not the same
+        Assert.assertEquals(3, memoized.call(Arrays.asList(1, 2, 3)).intValue());
+        // +1
+        Assert.assertNull(memoized.call(null));
+        Assert.assertNull(memoized.call(null));
+        Assert.assertEquals(3, count.get());
+        ((MemoizationInvalidator)memoized).invalidate(list);
+        // +1
+        Assert.assertEquals(3, memoized.call(list).intValue());
+        Assert.assertEquals(4, count.get());
+    }
+
+    @Test
+    public void testKeyEquivalenceProjection() {
+        final AtomicInteger count = new AtomicInteger(0);
+        Func2<List<Integer>, Integer, Integer> memoized = RxMemoization.builder()
+                .keyEquivalence(Equivalence.onResultOf(new Func1<Object, Object>() {
+                    @Override
+                    public Object call(Object o) {
+                        // Lists are identified by their first element
+                        return o instanceof List ? ((List<?>)o).get(0) : o;
+                    }
+                })).memoize(new Func2<List<Integer>, Integer, Integer>() {
+                    @Override
+                    public Integer call(List<Integer> integers, Integer integer) {
+                        count.incrementAndGet();
+                        return integers.get(0) + integer;
+                    }
+                });
+        // +1
+        Assert.assertEquals(2, memoized.call(Arrays.asList(1, 2, 3), 1).intValue());
+        Assert.assertEquals(2, memoized.call(Arrays.asList(1, 5), 1).intValue());
+        // +1
+        Assert.assertEquals(3, memoized.call(Arrays.asList(1, 2, 3), 2).intValue());
+        // +1
+        Assert.assertEquals(3, memoized.call(Arrays.asList(2), 1).intValue());
+        Assert.assertEquals(3, count.get());
+        Assert.assertEquals(3, ((MemoizationStats)memoized).size());
+    }
+
+    @Test
+    public void testKeyEquivalenceIdentitySkipsHashCode() {
+        final AtomicInteger hashes = new AtomicInteger(0);
+        final Object a = new Object() {
+            @Override
+            public int hashCode() {
+                return hashes.incrementAndGet();
+            }
+        };
+        final Object b = new Object() {
+            @Override
+            public int hashCode() {
+                return hashes.incrementAndGet();
+            }
+        };
+        Func2<Object, Object, Integer> memoized = RxMemoization.builder()
+                .keyEquivalence(Equivalence.IDENTITY).memoize(new Func2<Object, Object, Integer>() {
+                    @Override
+                    public Integer call(Object first, Object second) {
+                        return 1;
+                    }
+                });
+        FuncN<Integer> memoizedN = RxMemoization.builder().keyEquivalence(Equivalence.IDENTITY)
+                .memoize(new FuncN<Integer>() {
+                    @Override
+                    public Integer call(Object... args) {
+                        return args.length;
+                    }
+                });
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(1, memoized.call(a, b).intValue());
+            Assert.assertEquals(2, memoizedN.call(a, b).intValue());
+        }
+        ((MemoizationInvalidator)memoized).invalidate(a, b);
+        Assert.assertEquals(0, ((MemoizationStats)memoized).size());
+        Assert.assertEquals(0, hashes.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testKeyEquivalenceWithWeakKeys() {
+        RxMemoization.builder().keyEquivalence(Equivalence.IDENTITY).weakKeys()
+                .memoize(new Func1<Integer, MyObject>() {
+                    @Override
+                    public MyObject call(Integer integer) {
+                        return INSTANCE;
+                    }
+                });
+    }
+
+    private static MemoizationBuilder offHeapBuilder() {
+        return RxMemoization.builder().maximumSize(1).evictionPolicy(EvictionPolicy.LRU)
+                .offHeap(1024, new Codec<String>() {
+                    @Override
+                    public byte[] encode(String value) {
+                        return value.getBytes();
+                    }
+
+                    @Override
+                    public String decode(byte[] bytes) {
+                        return new String(bytes);
+                    }
+                });
+    }
+
+    private static IllegalStateException assertFails(Func1<Integer, MyObject> memoized,
+            Integer integer) {
+        try {
+            memoized.call(integer);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+        throw new AssertionError("Expected a failure");
+    }
+
+    private static void callConcurrently(final Action0 action) {
+        final int threadCount = 500;
+        final int maxDelay = 20;
+        Iterable<Observable<Long>> observableList = Observable.range(0, threadCount)
+                .map(new Func1<Integer, Observable<Long>>() {
+                    @Override
+                    public Observable<Long> call(final Integer integer) {
+                        return Observable
+                                .timer((long)(Math.random() * maxDelay), TimeUnit.MILLISECONDS)
+                                .doOnNext(new Action1<Long>() {
+                                    @Override
+                                    public void call(Long aLong) {
+                                        action.call();
+                                    }
+                                }).subscribeOn(Schedulers.newThread());
+                    }
+                }).toList().toBlocking().first();
+        Observable.merge(observableList).toBlocking().forEach(new Action1<Long>() {
+            @Override
+            public void call(Long o) {
+            }
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static final class MyObject {
         private final int number;
 